@@ -0,0 +1,84 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.arnx.wmf2svg.gdi.Dib;
+import net.arnx.wmf2svg.util.ImageUtil;
+import net.arnx.wmf2svg.util.PngEncoder;
+
+/**
+ * Measures the conversion of a bitmap to PNG by ImageUtil, and by
+ * PngEncoder for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageUtilBenchmark {
+	@Param({"64", "512"})
+	public int dibSize;
+
+	private byte[] bmp;
+	private Dib dib;
+
+	@Setup
+	public void setup() {
+		byte[] data = WmfCorpus.createDib(dibSize, dibSize, new Random(0));
+		dib = new Dib(data);
+
+		// ImageUtil reads a BMP file, that is a bitmap with a file header.
+		bmp = new byte[14 + data.length];
+		bmp[0] = 'B';
+		bmp[1] = 'M';
+		setInt32(bmp, 2, bmp.length);
+		setInt32(bmp, 10, 14 + 40);
+		System.arraycopy(data, 0, bmp, 14, data.length);
+	}
+
+	@Benchmark
+	public byte[] convert() {
+		return ImageUtil.convert(bmp, "png", true);
+	}
+
+	@Benchmark
+	public byte[] encode() {
+		return PngEncoder.encode(dib, true);
+	}
+
+	private static void setInt32(byte[] out, int pos, int value) {
+		out[pos] = (byte)value;
+		out[pos + 1] = (byte)(value >> 8);
+		out[pos + 2] = (byte)(value >> 16);
+		out[pos + 3] = (byte)(value >> 24);
+	}
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.benchmark;
+
+import net.arnx.wmf2svg.gdi.Dib;
+import net.arnx.wmf2svg.gdi.Gdi;
+import net.arnx.wmf2svg.gdi.GdiBrush;
+import net.arnx.wmf2svg.gdi.GdiFont;
+import net.arnx.wmf2svg.gdi.GdiObject;
+import net.arnx.wmf2svg.gdi.GdiPalette;
+import net.arnx.wmf2svg.gdi.GdiPatternBrush;
+import net.arnx.wmf2svg.gdi.GdiPen;
+import net.arnx.wmf2svg.gdi.GdiRegion;
+import net.arnx.wmf2svg.gdi.Point;
+import net.arnx.wmf2svg.gdi.Size;
+
+/**
+ * A Gdi that does nothing, to measure the parser alone.
+ *
+ * The bitmap methods that take a Dib are overridden as well, so that the
+ * bitmaps are not copied by the default methods.
+ */
+public class NullGdi implements Gdi {
+	public void placeableHeader(int vsx, int vsy, int vex, int vey, int dpi) {
+	}
+
+	public void header() {
+	}
+
+	public void animatePalette(GdiPalette palette, int startIndex, int[] entries) {
+	}
+
+	public void arc(int sxr, int syr, int exr, int eyr, int sxa, int sya, int exa, int eya) {
+	}
+
+	public void bitBlt(byte[] image, int dx, int dy, int dw, int dh, int sx, int sy, long rop) {
+	}
+
+	public void chord(int sxr, int syr, int exr, int eyr, int sxa, int sya, int exa, int eya) {
+	}
+
+	public GdiBrush createBrushIndirect(int style, int color, int hatch) {
+		return null;
+	}
+
+	public GdiFont createFontIndirect(int height, int width, int escapement, int orientation, int weight, boolean italic, boolean underline, boolean strikeout, int charset, int outPrecision, int clipPrecision, int quality, int pitchAndFamily, byte[] faceName) {
+		return null;
+	}
+
+	public GdiPalette createPalette(int version, int[] palEntry) {
+		return null;
+	}
+
+	public GdiPatternBrush createPatternBrush(byte[] image) {
+		return null;
+	}
+
+	public GdiPen createPenIndirect(int style, int width, int color) {
+		return null;
+	}
+
+	public GdiRegion createRectRgn(int left, int top, int right, int bottom) {
+		return null;
+	}
+
+	public void deleteObject(GdiObject obj) {
+	}
+
+	public void dibBitBlt(byte[] image, int dx, int dy, int dw, int dh, int sx, int sy, long rop) {
+	}
+
+	public GdiPatternBrush dibCreatePatternBrush(byte[] image, int usage) {
+		return null;
+	}
+
+	public void dibStretchBlt(byte[] image, int dx, int dy, int dw, int dh, int sx, int sy, int sw, int sh, long rop) {
+	}
+
+	public void ellipse(int sx, int sy, int ex, int ey) {
+	}
+
+	public void escape(byte[] data) {
+	}
+
+	public int excludeClipRect(int left, int top, int right, int bottom) {
+		return 0;
+	}
+
+	public void extFloodFill(int x, int y, int color, int type) {
+	}
+
+	public void extTextOut(int x, int y, int options, int[] rect, byte[] text, int[] lpdx) {
+	}
+
+	public void fillRgn(GdiRegion rgn, GdiBrush brush) {
+	}
+
+	public void floodFill(int x, int y, int color) {
+	}
+
+	public void frameRgn(GdiRegion rgn, GdiBrush brush, int w, int h) {
+	}
+
+	public void intersectClipRect(int left, int top, int right, int bottom) {
+	}
+
+	public void invertRgn(GdiRegion rgn) {
+	}
+
+	public void lineTo(int ex, int ey) {
+	}
+
+	public void moveToEx(int x, int y, Point old) {
+	}
+
+	public void offsetClipRgn(int x, int y) {
+	}
+
+	public void offsetViewportOrgEx(int x, int y, Point point) {
+	}
+
+	public void offsetWindowOrgEx(int x, int y, Point point) {
+	}
+
+	public void paintRgn(GdiRegion rgn) {
+	}
+
+	public void patBlt(int x, int y, int width, int height, long rop) {
+	}
+
+	public void pie(int sx, int sy, int ex, int ey, int sxr, int syr, int exr, int eyr) {
+	}
+
+	public void polygon(Point[] points) {
+	}
+
+	public void polyline(Point[] points) {
+	}
+
+	public void polyPolygon(Point[][] points) {
+	}
+
+	public void polygon(int[] points, int count) {
+	}
+
+	public void polyline(int[] points, int count) {
+	}
+
+	public void polyPolygon(int[] points, int[] counts, int polygons) {
+	}
+
+	public void realizePalette() {
+	}
+
+	public void restoreDC(int savedDC) {
+	}
+
+	public void rectangle(int sx, int sy, int ex, int ey) {
+	}
+
+	public void resizePalette(GdiPalette palette) {
+	}
+
+	public void roundRect(int sx, int sy, int ex, int ey, int rw, int rh) {
+	}
+
+	public void seveDC() {
+	}
+
+	public void scaleViewportExtEx(int x, int xd, int y, int yd, Size old) {
+	}
+
+	public void scaleWindowExtEx(int x, int xd, int y, int yd, Size old) {
+	}
+
+	public void selectClipRgn(GdiRegion rgn) {
+	}
+
+	public void selectObject(GdiObject obj) {
+	}
+
+	public void selectPalette(GdiPalette palette, boolean mode) {
+	}
+
+	public void setBkColor(int color) {
+	}
+
+	public void setBkMode(int mode) {
+	}
+
+	public void setDIBitsToDevice(int dx, int dy, int dw, int dh, int sx, int sy, int startscan, int scanlines, byte[] image, int colorUse) {
+	}
+
+	public void setLayout(long layout) {
+	}
+
+	public void setMapMode(int mode) {
+	}
+
+	public void setMapperFlags(long flags) {
+	}
+
+	public void setPaletteEntries(GdiPalette palette, int startIndex, int[] entries) {
+	}
+
+	public void setPixel(int x, int y, int color) {
+	}
+
+	public void setPolyFillMode(int mode) {
+	}
+
+	public void setRelAbs(int mode) {
+	}
+
+	public void setROP2(int mode) {
+	}
+
+	public void setStretchBltMode(int mode) {
+	}
+
+	public void setTextAlign(int align) {
+	}
+
+	public void setTextCharacterExtra(int extra) {
+	}
+
+	public void setTextColor(int color) {
+	}
+
+	public void setTextJustification(int breakExtra, int breakCount) {
+	}
+
+	public void setViewportExtEx(int x, int y, Size old) {
+	}
+
+	public void setViewportOrgEx(int x, int y, Point old) {
+	}
+
+	public void setWindowExtEx(int width, int height, Size old) {
+	}
+
+	public void setWindowOrgEx(int x, int y, Point old) {
+	}
+
+	public void stretchBlt(byte[] image, int dx, int dy, int dw, int dh, int sx, int sy, int sw, int sh, long rop) {
+	}
+
+	public void stretchDIBits(int dx, int dy, int dw, int dh, int sx, int sy, int sw, int sh, byte[] image, int usage, long rop) {
+	}
+
+	public void textOut(int x, int y, byte[] text) {
+	}
+
+	public void footer() {
+	}
+
+	public void bitBlt(Dib image, int dx, int dy, int dw, int dh, int sx, int sy, long rop) {
+	}
+
+	public void dibBitBlt(Dib image, int dx, int dy, int dw, int dh, int sx, int sy, long rop) {
+	}
+
+	public GdiPatternBrush dibCreatePatternBrush(Dib image, int usage) {
+		return null;
+	}
+
+	public void dibStretchBlt(Dib image, int dx, int dy, int dw, int dh, int sx, int sy, int sw, int sh, long rop) {
+	}
+
+	public void setDIBitsToDevice(int dx, int dy, int dw, int dh, int sx, int sy, int startscan, int scanlines, Dib image, int colorUse) {
+	}
+
+	public void stretchBlt(Dib image, int dx, int dy, int dw, int dh, int sx, int sy, int sw, int sh, long rop) {
+	}
+
+	public void stretchDIBits(int dx, int dy, int dw, int dh, int sx, int sy, int sw, int sh, Dib image, int usage, long rop) {
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import net.arnx.wmf2svg.Main;
+import net.arnx.wmf2svg.gdi.svg.SvgGdi;
+import net.arnx.wmf2svg.gdi.wmf.WmfParser;
+
+/**
+ * Measures the serialization of a rendered document by Main.output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputBenchmark {
+	@Param({"1000", "10000"})
+	public int records;
+
+	@Param({"0", "16"})
+	public int dibCount;
+
+	private Document doc;
+	private ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+	@Setup
+	public void setup() throws Exception {
+		byte[] data = new WmfCorpus()
+			.setRecords(records)
+			.setDibCount(dibCount)
+			.setDibSize(256)
+			.generate();
+		SvgGdi gdi = new SvgGdi();
+		new WmfParser().parse(data, gdi);
+		doc = gdi.getDocument();
+	}
+
+	@Benchmark
+	public int output() throws Exception {
+		out.reset();
+		Main.output(doc, out);
+		return out.size();
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.arnx.wmf2svg.gdi.wmf.WmfInfo;
+import net.arnx.wmf2svg.gdi.wmf.WmfParser;
+import net.arnx.wmf2svg.gdi.wmf.WmfRecordReader;
+
+/**
+ * Measures WmfParser alone, with a Gdi that does nothing, and a scan of
+ * the records by WmfRecordReader and WmfInfo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+	@Param({"1000", "100000"})
+	public int records;
+
+	@Param({"8", "256"})
+	public int vertices;
+
+	@Param({"0", "16"})
+	public int dibCount;
+
+	private byte[] data;
+	private NullGdi gdi = new NullGdi();
+
+	@Setup
+	public void setup() {
+		data = new WmfCorpus()
+			.setRecords(records)
+			.setVertices(vertices)
+			.setDibCount(dibCount)
+			.setDibSize(256)
+			.generate();
+	}
+
+	@Benchmark
+	public void parseBytes() throws Exception {
+		new WmfParser().parse(data, gdi);
+	}
+
+	@Benchmark
+	public void parseStream() throws Exception {
+		new WmfParser().parse(new ByteArrayInputStream(data), gdi);
+	}
+
+	@Benchmark
+	public int scanRecords() throws Exception {
+		WmfRecordReader reader = new WmfRecordReader(data);
+		int count = 0;
+		while (reader.next()) {
+			count += reader.getId();
+		}
+		return count;
+	}
+
+	@Benchmark
+	public WmfInfo scanInfo() throws Exception {
+		return WmfInfo.scan(new ByteArrayInputStream(data));
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.benchmark;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+
+import net.arnx.wmf2svg.gdi.svg.SvgGdi;
+import net.arnx.wmf2svg.gdi.svg.SvgGdiConfig;
+import net.arnx.wmf2svg.gdi.wmf.WmfParser;
+
+/**
+ * Measures the rendering by SvgGdi, in the DOM mode and in the streaming mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SvgGdiBenchmark {
+	@Param({"1000", "10000"})
+	public int records;
+
+	@Param({"0.1", "0.5"})
+	public double textDensity;
+
+	@Param({"0", "16"})
+	public int dibCount;
+
+	@Param({"64", "512"})
+	public int dibSize;
+
+	private byte[] data;
+	private SvgGdi reused;
+
+	@Setup
+	public void setup() throws Exception {
+		data = new WmfCorpus()
+			.setRecords(records)
+			.setTextDensity(textDensity)
+			.setDibCount(dibCount)
+			.setDibSize(dibSize)
+			.generate();
+		reused = new SvgGdi(SvgGdiConfig.getDefault());
+	}
+
+	@Benchmark
+	public Document render() throws Exception {
+		SvgGdi gdi = new SvgGdi();
+		new WmfParser().parse(data, gdi);
+		return gdi.getDocument();
+	}
+
+	@Benchmark
+	public Document renderReused() throws Exception {
+		reused.reset();
+		new WmfParser().parse(data, reused);
+		return reused.getDocument();
+	}
+
+	@Benchmark
+	public void renderStreaming(final Blackhole bh) throws Exception {
+		SvgGdi gdi = new SvgGdi();
+		gdi.setOutput(new OutputStream() {
+			public void write(int b) {
+				bh.consume(b);
+			}
+
+			public void write(byte[] b, int off, int len) {
+				bh.consume(b);
+			}
+		});
+		new WmfParser().parse(data, gdi);
+	}
+
+	@Benchmark
+	public void renderStreamingPipelined(final Blackhole bh) throws Exception {
+		SvgGdi gdi = new SvgGdi();
+		gdi.setOutput(new OutputStream() {
+			public void write(int b) {
+				bh.consume(b);
+			}
+
+			public void write(byte[] b, int off, int len) {
+				bh.consume(b);
+			}
+		});
+		WmfParser parser = new WmfParser();
+		parser.setPipelineSize(256);
+		parser.parse(data, gdi);
+	}
+}
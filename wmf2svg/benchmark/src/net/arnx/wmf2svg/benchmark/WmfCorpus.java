@@ -0,0 +1,282 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import net.arnx.wmf2svg.gdi.Gdi;
+import net.arnx.wmf2svg.gdi.GdiBrush;
+import net.arnx.wmf2svg.gdi.GdiFont;
+import net.arnx.wmf2svg.gdi.GdiPen;
+import net.arnx.wmf2svg.gdi.Point;
+import net.arnx.wmf2svg.gdi.wmf.WmfGdi;
+
+/**
+ * Generates synthetic metafiles for the benchmarks by WmfGdi.
+ *
+ * The same parameters always make the same bytes, because the contents are
+ * chosen by a random generator with a fixed seed.
+ */
+public class WmfCorpus {
+	private static final int EXTENT = 10000;
+
+	private int records = 1000;
+	private int vertices = 8;
+	private double textDensity = 0.1;
+	private int dibCount = 0;
+	private int dibSize = 64;
+	private long seed = 0;
+
+	/**
+	 * Sets the number of the drawing records.
+	 */
+	public WmfCorpus setRecords(int records) {
+		this.records = records;
+		return this;
+	}
+
+	/**
+	 * Sets the number of the vertices of a polygon or a polyline.
+	 */
+	public WmfCorpus setVertices(int vertices) {
+		this.vertices = vertices;
+		return this;
+	}
+
+	/**
+	 * Sets the ratio of the text records to the drawing records (0.0 - 1.0).
+	 */
+	public WmfCorpus setTextDensity(double textDensity) {
+		this.textDensity = textDensity;
+		return this;
+	}
+
+	/**
+	 * Sets the number of the bitmaps. They are all different.
+	 */
+	public WmfCorpus setDibCount(int dibCount) {
+		this.dibCount = dibCount;
+		return this;
+	}
+
+	/**
+	 * Sets the width and the height of the bitmaps in pixels.
+	 */
+	public WmfCorpus setDibSize(int dibSize) {
+		this.dibSize = dibSize;
+		return this;
+	}
+
+	public WmfCorpus setSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	public byte[] generate() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			write(out);
+		} catch (IOException e) {
+			// never occurred.
+			throw new IllegalStateException(e);
+		}
+		return out.toByteArray();
+	}
+
+	public void write(OutputStream out) throws IOException {
+		WmfGdi gdi = new WmfGdi();
+		draw(gdi);
+		gdi.write(out);
+	}
+
+	/**
+	 * Draws the contents to any Gdi.
+	 */
+	public void draw(Gdi gdi) {
+		Random random = new Random(seed);
+
+		gdi.placeableHeader(0, 0, EXTENT, EXTENT, 1440);
+		gdi.header();
+		gdi.setWindowOrgEx(0, 0, null);
+		gdi.setWindowExtEx(EXTENT, EXTENT, null);
+		gdi.setBkMode(1);
+
+		GdiFont font = gdi.createFontIndirect(-240, 0, 0, 0, GdiFont.FW_NORMAL,
+				false, false, false, GdiFont.ANSI_CHARSET,
+				GdiFont.OUT_DEFAULT_PRECIS, GdiFont.CLIP_DEFAULT_PRECIS,
+				GdiFont.DEFAULT_QUALITY, GdiFont.DEFAULT_PITCH,
+				"Arial".getBytes(StandardCharsets.ISO_8859_1));
+		gdi.selectObject(font);
+
+		int dibStep = (dibCount > 0) ? Math.max(records / dibCount, 1) : 0;
+		int dibs = 0;
+		for (int i = 0; i < records; i++) {
+			if (dibs < dibCount && i % dibStep == 0) {
+				byte[] dib = createDib(dibSize, dibSize, random);
+				int x = random.nextInt(EXTENT);
+				int y = random.nextInt(EXTENT);
+				gdi.stretchDIBits(x, y, dibSize * 4, dibSize * 4, 0, 0, dibSize, dibSize,
+						dib, Gdi.DIB_RGB_COLORS, Gdi.SRCCOPY);
+				dibs++;
+				continue;
+			}
+
+			if (random.nextDouble() < textDensity) {
+				gdi.setTextColor(random.nextInt(0x1000000));
+				byte[] text = createText(random);
+				if (random.nextBoolean()) {
+					gdi.textOut(random.nextInt(EXTENT), random.nextInt(EXTENT), text);
+				} else {
+					int[] dx = new int[text.length];
+					for (int j = 0; j < dx.length; j++) {
+						dx[j] = 100 + random.nextInt(40);
+					}
+					gdi.extTextOut(random.nextInt(EXTENT), random.nextInt(EXTENT), 0, null, text, dx);
+				}
+				continue;
+			}
+
+			GdiPen pen = gdi.createPenIndirect(GdiPen.PS_SOLID, 1 + random.nextInt(20), random.nextInt(0x1000000));
+			GdiBrush brush = gdi.createBrushIndirect(GdiBrush.BS_SOLID, random.nextInt(0x1000000), 0);
+			gdi.selectObject(pen);
+			gdi.selectObject(brush);
+
+			int x = random.nextInt(EXTENT);
+			int y = random.nextInt(EXTENT);
+			int w = 10 + random.nextInt(1000);
+			int h = 10 + random.nextInt(1000);
+			switch (random.nextInt(6)) {
+			case 0:
+				gdi.rectangle(x, y, x + w, y + h);
+				break;
+			case 1:
+				gdi.ellipse(x, y, x + w, y + h);
+				break;
+			case 2:
+				gdi.roundRect(x, y, x + w, y + h, w / 4, h / 4);
+				break;
+			case 3:
+				gdi.polygon(createPoints(x, y, w, h, random));
+				break;
+			case 4:
+				gdi.polyline(createPoints(x, y, w, h, random));
+				break;
+			default:
+				gdi.moveToEx(x, y, null);
+				for (int j = 1; j < vertices; j++) {
+					gdi.lineTo(x + random.nextInt(w), y + random.nextInt(h));
+				}
+			}
+
+			gdi.deleteObject(brush);
+			gdi.deleteObject(pen);
+		}
+
+		gdi.footer();
+	}
+
+	private Point[] createPoints(int x, int y, int w, int h, Random random) {
+		Point[] points = new Point[Math.max(vertices, 2)];
+		for (int i = 0; i < points.length; i++) {
+			points[i] = new Point(x + random.nextInt(w), y + random.nextInt(h));
+		}
+		return points;
+	}
+
+	private static byte[] createText(Random random) {
+		byte[] text = new byte[4 + random.nextInt(40)];
+		for (int i = 0; i < text.length; i++) {
+			text[i] = (byte)((i % 6 == 5) ? ' ' : 'a' + random.nextInt(26));
+		}
+		return text;
+	}
+
+	/**
+	 * Creates a 24 bit bottom-up bitmap with a random gradient, so that it
+	 * is compressed as little as the photos in the documents.
+	 */
+	static byte[] createDib(int width, int height, Random random) {
+		int stride = (width * 3 + 3) & ~3;
+		byte[] dib = new byte[40 + stride * height];
+		setInt32(dib, 0, 40);
+		setInt32(dib, 4, width);
+		setInt32(dib, 8, height);
+		setInt16(dib, 12, 1);
+		setInt16(dib, 14, 24);
+		setInt32(dib, 20, stride * height);
+
+		int base = random.nextInt(0x1000000);
+		for (int y = 0; y < height; y++) {
+			int pos = 40 + stride * y;
+			for (int x = 0; x < width; x++) {
+				dib[pos++] = (byte)((base & 0xFF) + x + random.nextInt(8));
+				dib[pos++] = (byte)(((base >> 8) & 0xFF) + y + random.nextInt(8));
+				dib[pos++] = (byte)(((base >> 16) & 0xFF) + x + y);
+			}
+		}
+		return dib;
+	}
+
+	private static void setInt16(byte[] out, int pos, int value) {
+		out[pos] = (byte)value;
+		out[pos + 1] = (byte)(value >> 8);
+	}
+
+	private static void setInt32(byte[] out, int pos, int value) {
+		out[pos] = (byte)value;
+		out[pos + 1] = (byte)(value >> 8);
+		out[pos + 2] = (byte)(value >> 16);
+		out[pos + 3] = (byte)(value >> 24);
+	}
+
+	/**
+	 * Writes a corpus of files to a directory, for example to try the batch
+	 * mode of the command line.
+	 *
+	 * java net.arnx.wmf2svg.benchmark.WmfCorpus [directory] [files] [records] [dibs]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("java net.arnx.wmf2svg.benchmark.WmfCorpus [directory] [files] [records] [dibs]");
+			System.exit(-1);
+		}
+
+		File dir = new File(args[0]);
+		int files = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+		int records = (args.length > 2) ? Integer.parseInt(args[2]) : 1000;
+		int dibs = (args.length > 3) ? Integer.parseInt(args[3]) : 0;
+
+		dir.mkdirs();
+		for (int i = 0; i < files; i++) {
+			WmfCorpus corpus = new WmfCorpus()
+				.setRecords(records)
+				.setDibCount(dibs)
+				.setSeed(i);
+			OutputStream out = new FileOutputStream(new File(dir, "corpus" + i + ".wmf"));
+			try {
+				corpus.write(out);
+			} finally {
+				out.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import net.arnx.wmf2svg.gdi.svg.SvgGdi;
+import net.arnx.wmf2svg.gdi.svg.SvgGdiConfig;
+import net.arnx.wmf2svg.gdi.svg.SvgGdiException;
+import net.arnx.wmf2svg.gdi.wmf.WmfParseException;
+import net.arnx.wmf2svg.gdi.wmf.WmfParser;
+import net.arnx.wmf2svg.util.ImageCache;
+
+/**
+ * Converts the metafiles in a directory tree to SVG files on a pool of threads.
+ *
+ * The files are written in the streaming mode of SvgGdi. Each thread reuses
+ * one SvgGdi, and all of them share one configuration. A failure of a file
+ * is reported to the listener and does not stop the others.
+ */
+public class BatchConverter {
+	private static Logger log = Logger.getLogger(BatchConverter.class.getName());
+
+	// smaller files are read into memory rather than mapped.
+	private static final long MAP_THRESHOLD = 1024 * 1024;
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private String pattern = "**.{wmf,WMF}";
+	private boolean compressed = false;
+	private boolean compatible = false;
+	private boolean replaceSymbolFont = false;
+	private int precision = -1;
+	private ImageCache imageCache = null;
+	private Listener listener = null;
+
+	public interface Listener {
+		public void converted(Path src, Path dest);
+		public void failed(Path src, Exception e);
+	}
+
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads: " + threads);
+		}
+		this.threads = threads;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Sets the glob pattern of the files to convert. It is matched with the
+	 * path relative to the source directory. The default is "**.{wmf,WMF}".
+	 */
+	public void setPattern(String pattern) {
+		this.pattern = pattern;
+	}
+
+	public String getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * If true, the files are written as gzip compressed ".svgz".
+	 */
+	public void setCompressed(boolean flag) {
+		compressed = flag;
+	}
+
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	public void setCompatible(boolean flag) {
+		compatible = flag;
+	}
+
+	public boolean isCompatible() {
+		return compatible;
+	}
+
+	public void setReplaceSymbolFont(boolean flag) {
+		replaceSymbolFont = flag;
+	}
+
+	public boolean isReplaceSymbolFont() {
+		return replaceSymbolFont;
+	}
+
+	/**
+	 * Sets the number of the fraction digits of the decimal coordinates.
+	 * 
+	 * @see SvgGdiConfig#withPrecision(int)
+	 */
+	public void setPrecision(int precision) {
+		if (precision < 0 || precision > 8) {
+			throw new IllegalArgumentException("precision: " + precision);
+		}
+		this.precision = precision;
+	}
+
+	/**
+	 * Returns the number of the fraction digits, or -1 if it is not set.
+	 */
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Sets the image cache shared by all the conversions.
+	 */
+	public void setImageCache(ImageCache cache) {
+		imageCache = cache;
+	}
+
+	public ImageCache getImageCache() {
+		return imageCache;
+	}
+
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	public Listener getListener() {
+		return listener;
+	}
+
+	/**
+	 * Converts the files that match the pattern in the source directory and
+	 * its subdirectories. The output files have the same relative paths in
+	 * the destination directory.
+	 *
+	 * @param srcDir the source directory.
+	 * @param destDir the destination directory.
+	 * @return the statistics of the conversions.
+	 * @exception IOException if the source directory cannot be read.
+	 * @exception SvgGdiException if SvgGdi.properties cannot be read.
+	 */
+	public Statistics convert(final Path srcDir, final Path destDir) throws IOException, SvgGdiException {
+		final PathMatcher matcher = srcDir.getFileSystem().getPathMatcher("glob:" + pattern);
+		final Statistics stats = new Statistics();
+		SvgGdiConfig base = SvgGdiConfig.getDefault().withFlags(compatible, replaceSymbolFont);
+		final SvgGdiConfig config = (precision >= 0) ? base.withPrecision(precision) : base;
+		final ThreadLocal<SvgGdi> gdis = new ThreadLocal<SvgGdi>();
+
+		// the queue is bounded so that the walk does not run ahead of the workers.
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+				0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(threads * 4),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		try {
+			Files.walkFileTree(srcDir, new SimpleFileVisitor<Path>() {
+				public FileVisitResult visitFile(final Path src, BasicFileAttributes attrs) {
+					final Path relative = srcDir.relativize(src);
+					if (attrs.isRegularFile() && matcher.matches(relative)) {
+						executor.execute(new Runnable() {
+							public void run() {
+								SvgGdi gdi = gdis.get();
+								try {
+									if (gdi == null) {
+										gdi = new SvgGdi(config);
+										gdi.setImageCache(imageCache);
+										gdis.set(gdi);
+									} else {
+										gdi.reset();
+									}
+								} catch (Exception e) {
+									stats.failureCount.incrementAndGet();
+									failed(src, e);
+									return;
+								}
+								convert(gdi, src, destDir.resolve(getDestName(relative)), stats);
+							}
+						});
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				public FileVisitResult visitFileFailed(Path file, IOException e) {
+					stats.failureCount.incrementAndGet();
+					failed(file, e);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} finally {
+			executor.shutdown();
+			try {
+				while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+					// wait for the rest
+				}
+			} catch (InterruptedException e) {
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+			stats.end = System.nanoTime();
+		}
+		return stats;
+	}
+
+	private String getDestName(Path relative) {
+		String name = relative.toString();
+		int pos = name.lastIndexOf('.');
+		if (pos > name.lastIndexOf(File.separatorChar)) {
+			name = name.substring(0, pos);
+		}
+		return name + (compressed ? ".svgz" : ".svg");
+	}
+
+	private void convert(SvgGdi gdi, Path src, Path dest, Statistics stats) {
+		try {
+			long size = Files.size(src);
+			Path parent = dest.getParent();
+			if (parent != null) {
+				Files.createDirectories(parent);
+			}
+
+			CountingOutputStream counter = new CountingOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(dest)));
+			OutputStream out = compressed ? new GZIPOutputStream(counter) : (OutputStream)counter;
+			boolean success = false;
+			try {
+				gdi.setOutput(out);
+				WmfParser parser = new WmfParser();
+				if (size < MAP_THRESHOLD) {
+					parser.parse(Files.readAllBytes(src), gdi);
+				} else {
+					parser.parse(src, gdi);
+				}
+				
+				// the parser ends without footer() when the file is truncated.
+				if (!gdi.isEnded()) {
+					throw new WmfParseException("unexpected end of file.");
+				}
+				out.close();
+				success = true;
+			} finally {
+				if (!success) {
+					gdi.reset();
+					try {
+						out.close();
+					} catch (IOException e) {
+						// no handle
+					}
+					Files.deleteIfExists(dest);
+				}
+			}
+
+			stats.fileCount.incrementAndGet();
+			stats.inputBytes.addAndGet(size);
+			stats.outputBytes.addAndGet(counter.count);
+			if (listener != null) {
+				listener.converted(src, dest);
+			}
+		} catch (Exception e) {
+			stats.failureCount.incrementAndGet();
+			failed(src, e);
+		}
+	}
+
+	private void failed(Path src, Exception e) {
+		if (listener != null) {
+			listener.failed(src, e);
+		} else {
+			log.log(Level.WARNING, "failed to convert: " + src, e);
+		}
+	}
+
+	/**
+	 * The statistics of a batch conversion.
+	 */
+	public static class Statistics {
+		private long start = System.nanoTime();
+		private long end = 0;
+		private AtomicLong fileCount = new AtomicLong();
+		private AtomicLong failureCount = new AtomicLong();
+		private AtomicLong inputBytes = new AtomicLong();
+		private AtomicLong outputBytes = new AtomicLong();
+
+		/**
+		 * Returns the number of the files converted successfully.
+		 */
+		public long getFileCount() {
+			return fileCount.get();
+		}
+
+		public long getFailureCount() {
+			return failureCount.get();
+		}
+
+		public long getInputBytes() {
+			return inputBytes.get();
+		}
+
+		public long getOutputBytes() {
+			return outputBytes.get();
+		}
+
+		public long getElapsedMillis() {
+			return ((end != 0 ? end : System.nanoTime()) - start) / 1000000;
+		}
+
+		public String toString() {
+			double seconds = Math.max(getElapsedMillis(), 1) / 1000.0;
+			return getFileCount() + " files converted, " + getFailureCount() + " failed in "
+				+ seconds + " s (" + Math.round(getFileCount() / seconds) + " files/s, "
+				+ Math.round(getInputBytes() / seconds / 1024) + " KB/s in, "
+				+ Math.round(getOutputBytes() / seconds / 1024) + " KB/s out)";
+		}
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count = 0;
+
+		public CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+}
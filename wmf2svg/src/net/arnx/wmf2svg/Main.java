@@ -20,6 +20,8 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.logging.Logger;
 import java.util.zip.GZIPOutputStream;
 
@@ -30,6 +32,7 @@ import javax.xml.transform.stream.*;
 
 import net.arnx.wmf2svg.gdi.Gdi;
 import net.arnx.wmf2svg.gdi.svg.*;
+import net.arnx.wmf2svg.gdi.text.TextGdi;
 import net.arnx.wmf2svg.gdi.wmf.*;
 
 /**
@@ -45,15 +48,54 @@ public class Main {
 		boolean debug = false;
 		boolean compatible = false;
 		boolean replaceSymbolFont = false;
+		boolean streaming = false;
+		boolean text = false;
+		boolean batch = false;
+		boolean svgz = false;
+		int threads = 0;
+		int precision = -1;
+		int pipeline = 0;
+		String glob = null;
 		
 		for (int i = 0; i < args.length; i++) {
 			if (args[i].startsWith("-")) {
-				if (args[i].equals("-debug")) {
+				if (args[i].equals("-batch")) {
+					batch = true;
+				} else if (args[i].equals("-svgz")) {
+					svgz = true;
+				} else if (args[i].equals("-threads") && i + 1 < args.length) {
+					try {
+						threads = Integer.parseInt(args[++i]);
+					} catch (NumberFormatException e) {
+						usage();
+						return;
+					}
+				} else if (args[i].equals("-precision") && i + 1 < args.length) {
+					try {
+						precision = Integer.parseInt(args[++i]);
+					} catch (NumberFormatException e) {
+						usage();
+						return;
+					}
+				} else if (args[i].equals("-pipeline") && i + 1 < args.length) {
+					try {
+						pipeline = Integer.parseInt(args[++i]);
+					} catch (NumberFormatException e) {
+						usage();
+						return;
+					}
+				} else if (args[i].equals("-glob") && i + 1 < args.length) {
+					glob = args[++i];
+				} else if (args[i].equals("-debug")) {
 					debug = true;
 				} else if (args[i].equals("-compatible")) {
 					compatible = true;
 				} else if (args[i].equals("-replace-symbol-font")) {
 					replaceSymbolFont = true;
+				} else if (args[i].equals("-streaming")) {
+					streaming = true;
+				} else if (args[i].equals("-text")) {
+					text = true;
 				} else {
 					usage();
 					return;
@@ -69,12 +111,59 @@ public class Main {
 			usage();
 			return;
 		}
+		
+		if (batch) {
+			BatchConverter converter = new BatchConverter();
+			if (threads > 0) converter.setThreads(threads);
+			if (glob != null) converter.setPattern(glob);
+			converter.setCompressed(svgz);
+			converter.setCompatible(compatible);
+			converter.setReplaceSymbolFont(replaceSymbolFont);
+			if (precision >= 0) converter.setPrecision(precision);
+			converter.setListener(new BatchConverter.Listener() {
+				public void converted(Path src, Path dest) {
+				}
+				
+				public void failed(Path src, Exception e) {
+					System.err.println(src + ": " + e);
+				}
+			});
+			try {
+				BatchConverter.Statistics stats = converter.convert(Paths.get(src), Paths.get(dest));
+				System.out.println(stats);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			return;
+		}
 
+		InputStream in = null;
+		OutputStream out = null;
+		SvgGdi svg = null;
+		boolean success = false;
 		try {
-			InputStream in = new FileInputStream(src);
+			in = new FileInputStream(src);
 			WmfParser parser = new WmfParser();
-			final SvgGdi gdi = new SvgGdi(compatible);
-			gdi.setReplaceSymbolFont(replaceSymbolFont);
+			if (pipeline > 0) parser.setPipelineSize(pipeline);
+			if (text) {
+				Writer writer = new OutputStreamWriter(new FileOutputStream(dest), "UTF-8");
+				try {
+					parser.setSkippedRecords(TextGdi.getSkippedRecords());
+					parser.parse(in, new TextGdi(writer));
+				} finally {
+					writer.close();
+				}
+				success = true;
+				return;
+			}
+			SvgGdiConfig config = SvgGdiConfig.getDefault().withFlags(compatible, replaceSymbolFont);
+			if (precision >= 0) config = config.withPrecision(precision);
+			final SvgGdi gdi = new SvgGdi(config);
+			svg = gdi;
+			if (streaming) {
+				out = openOutput(dest);
+				gdi.setOutput(out);
+			}
 			if (debug) {
 				ClassLoader cl = gdi.getClass().getClassLoader();
 				Class[] interfaces = new Class[] { Gdi.class };
@@ -142,20 +231,61 @@ public class Main {
 			} else {
 				parser.parse(in, gdi);
 			}
+			
+			// the parser ends without footer() when the file is truncated.
+			if (!gdi.isEnded()) {
+				throw new WmfParseException("unexpected end of file.");
+			}
 		
-			Document doc = gdi.getDocument();
-			OutputStream out = new FileOutputStream(dest);
-			if (args[1].endsWith(".svgz")) {
-				out = new GZIPOutputStream(out);
+			if (streaming) {
+				out.flush();
+				out.close();
+			} else {
+				Document doc = gdi.getDocument();
+				out = openOutput(dest);
+				output(doc, out);
 			}
-			
-			output(doc, out);
+			success = true;
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			if (svg != null) {
+				// discards the spool of an unfinished streaming output
+				svg.reset();
+			}
+			try {
+				if (in != null) in.close();
+			} catch (IOException e) {
+				// no handle
+			}
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// no handle
+				}
+				if (!success) {
+					new File(dest).delete();
+				}
+			}
+		}
+		if (!success) {
+			System.exit(-1);
+		}
+	}
+	
+	private static OutputStream openOutput(String dest) throws IOException {
+		OutputStream out = new FileOutputStream(dest);
+		if (dest.endsWith(".svgz")) {
+			out = new GZIPOutputStream(out);
 		}
+		return out;
 	}
 
-	private static void output(Document doc, OutputStream out)
+	/**
+	 * Writes a document made by SvgGdi as a SVG file, and closes the stream.
+	 */
+	public static void output(Document doc, OutputStream out)
 		throws Exception {
 		TransformerFactory factory = TransformerFactory.newInstance();
 		Transformer transformer = factory.newTransformer();
@@ -172,7 +302,9 @@ public class Main {
 	}
 	
 	private static void usage() {
-		System.out.println("java -jar wmf2svg.jar [wmf filename] [svg filename(svg, xml, or .svgz)]");
+		System.out.println("java -jar wmf2svg.jar [-debug] [-compatible] [-replace-symbol-font] [-streaming] [-precision n] [-pipeline n] [wmf filename] [svg filename(svg, xml, or .svgz)]");
+		System.out.println("java -jar wmf2svg.jar -text [wmf filename] [text filename]");
+		System.out.println("java -jar wmf2svg.jar -batch [-threads n] [-glob pattern] [-svgz] [-compatible] [-replace-symbol-font] [-precision n] [wmf directory] [svg directory]");
 		System.exit(-1);
 	}
 }
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.gdi;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A device independent bitmap in a buffer.
+ *
+ * This is a view of the buffer that holds the bitmap, so it is not copied.
+ * The bitmap info header is parsed when the instance is created. When the
+ * header is neither a BITMAPCOREHEADER nor a BITMAPINFOHEADER (or one of
+ * its later versions), all the header values are zero.
+ */
+public final class Dib {
+	public static final int BI_RGB = 0;
+	public static final int BI_RLE8 = 1;
+	public static final int BI_RLE4 = 2;
+	public static final int BI_BITFIELDS = 3;
+	public static final int BI_JPEG = 4;
+	public static final int BI_PNG = 5;
+
+	private static final int CORE_HEADER_SIZE = 12;
+	private static final int INFO_HEADER_SIZE = 40;
+
+	private ByteBuffer buf;
+	private int offset;
+	private int length;
+
+	private int headerSize;
+	private int width;
+	private int height;
+	private int planes;
+	private int bitCount;
+	private int compression;
+	private int imageSize;
+	private int xPelsPerMeter;
+	private int yPelsPerMeter;
+	private int colorsUsed;
+	private int colorsImportant;
+
+	/**
+	 * Creates a view of the remaining bytes of a buffer. The position of the
+	 * buffer is not changed.
+	 */
+	public Dib(ByteBuffer buf) {
+		this.buf = buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		this.offset = buf.position();
+		this.length = buf.remaining();
+
+		if (length < 4) {
+			return;
+		}
+
+		int size = this.buf.getInt(offset);
+		if (size == CORE_HEADER_SIZE && length >= size) {
+			headerSize = size;
+			width = this.buf.getShort(offset + 4) & 0xFFFF;
+			height = this.buf.getShort(offset + 6);
+			planes = this.buf.getShort(offset + 8) & 0xFFFF;
+			bitCount = this.buf.getShort(offset + 10) & 0xFFFF;
+		} else if (size >= INFO_HEADER_SIZE && length >= size) {
+			headerSize = size;
+			width = this.buf.getInt(offset + 4);
+			height = this.buf.getInt(offset + 8);
+			planes = this.buf.getShort(offset + 12) & 0xFFFF;
+			bitCount = this.buf.getShort(offset + 14) & 0xFFFF;
+			compression = this.buf.getInt(offset + 16);
+			imageSize = this.buf.getInt(offset + 20);
+			xPelsPerMeter = this.buf.getInt(offset + 24);
+			yPelsPerMeter = this.buf.getInt(offset + 28);
+			colorsUsed = this.buf.getInt(offset + 32);
+			colorsImportant = this.buf.getInt(offset + 36);
+		}
+	}
+
+	/**
+	 * Creates a view of a byte array.
+	 */
+	public Dib(byte[] data) {
+		this(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Returns a new buffer whose content is this bitmap.
+	 * The position is the start of the header, and the remaining is the
+	 * length of this bitmap.
+	 */
+	public ByteBuffer getBuffer() {
+		ByteBuffer dup = buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		dup.limit(offset + length).position(offset);
+		return dup;
+	}
+
+	/**
+	 * Returns the position of this bitmap in the source buffer.
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Returns the length of this bitmap in bytes.
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the byte at the index from the start of the header.
+	 */
+	public int getByte(int index) {
+		return buf.get(offset + index) & 0xFF;
+	}
+
+	public int getHeaderSize() {
+		return headerSize;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the height of this bitmap. It is always positive.
+	 */
+	public int getHeight() {
+		return Math.abs(height);
+	}
+
+	/**
+	 * Returns true when the first scan line is the top of the bitmap.
+	 */
+	public boolean isTopDown() {
+		return height < 0;
+	}
+
+	public int getPlanes() {
+		return planes;
+	}
+
+	public int getBitCount() {
+		return bitCount;
+	}
+
+	public int getCompression() {
+		return compression;
+	}
+
+	public int getImageSize() {
+		return imageSize;
+	}
+
+	public int getXPelsPerMeter() {
+		return xPelsPerMeter;
+	}
+
+	public int getYPelsPerMeter() {
+		return yPelsPerMeter;
+	}
+
+	public int getColorsUsed() {
+		return colorsUsed;
+	}
+
+	public int getColorsImportant() {
+		return colorsImportant;
+	}
+
+	/**
+	 * Returns the number of entries in the color table.
+	 */
+	public int getColorCount() {
+		if (bitCount == 0) {
+			return 0;
+		} else if (bitCount <= 8) {
+			int max = 1 << bitCount;
+			return (colorsUsed > 0 && colorsUsed < max) ? colorsUsed : max;
+		}
+		return (headerSize == CORE_HEADER_SIZE) ? 0 : Math.max(colorsUsed, 0);
+	}
+
+	/**
+	 * Returns the offset of the color table from the start of the header.
+	 * The bit field masks of a BITMAPINFOHEADER are regarded as a part of the
+	 * header.
+	 */
+	public int getColorTableOffset() {
+		if (headerSize == INFO_HEADER_SIZE && compression == BI_BITFIELDS) {
+			return headerSize + 12;
+		}
+		return headerSize;
+	}
+
+	/**
+	 * Returns the color at the index of the color table as 0x00RRGGBB.
+	 */
+	public int getColor(int index) {
+		if (headerSize == CORE_HEADER_SIZE) {
+			int pos = offset + getColorTableOffset() + index * 3;
+			return ((buf.get(pos + 2) & 0xFF) << 16)
+				| ((buf.get(pos + 1) & 0xFF) << 8)
+				| (buf.get(pos) & 0xFF);
+		}
+		return buf.getInt(offset + getColorTableOffset() + index * 4) & 0xFFFFFF;
+	}
+
+	/**
+	 * Returns the offset of the bitmap bits from the start of the header.
+	 * It is a long, because a broken header may give any number of colors.
+	 */
+	public long getBitsOffset() {
+		int entrySize = (headerSize == CORE_HEADER_SIZE) ? 3 : 4;
+		return getColorTableOffset() + (long)getColorCount() * entrySize;
+	}
+
+	/**
+	 * Returns the number of bytes of a scan line of an uncompressed bitmap.
+	 * It is a long, because a broken header may give any width.
+	 */
+	public long getStride() {
+		return (((long)width * bitCount + 31) / 32) * 4;
+	}
+
+	/**
+	 * Copies this bitmap to a new array.
+	 */
+	public byte[] toByteArray() {
+		byte[] array = new byte[length];
+		getBuffer().get(array);
+		return array;
+	}
+
+	public String toString() {
+		return "Dib [width=" + width + ", height=" + height + ", bitCount=" + bitCount
+			+ ", compression=" + compression + ", length=" + length + "]";
+	}
+}
@@ -129,6 +129,7 @@ public interface Gdi {
     public void deleteObject(GdiObject obj);
     public void dibBitBlt(byte[] image, int dx, int dy, int dw, int dh,
 			int sx, int sy, long rop);
+
     public GdiPatternBrush dibCreatePatternBrush(byte[] image, int usage);
     public void dibStretchBlt(byte[] image, int dx, int dy, int dw, int dh,
 			int sx, int sy, int sw, int sh, long rop);
@@ -190,6 +191,81 @@ public interface Gdi {
     public void stretchDIBits(int dx, int dy, int dw, int dh,
 					int sx, int sy, int sw, int sh,
 					byte[] image, int usage, long rop);
+
     public void textOut(int x, int y, byte[] text);
     public void footer();
+    
+    /*
+     * The methods below take the bitmap as a Dib, which is a view of the
+     * metafile buffer. The parser calls them so that an implementation can
+     * read the bitmap in place. The defaults copy the bitmap to an array and
+     * call the byte[] version.
+     */
+    
+    public default void bitBlt(Dib image, int dx, int dy, int dw, int dh, int sx, int sy, long rop) {
+    	bitBlt(image.toByteArray(), dx, dy, dw, dh, sx, sy, rop);
+    }
+    
+    public default void dibBitBlt(Dib image, int dx, int dy, int dw, int dh,
+			int sx, int sy, long rop) {
+    	dibBitBlt(image.toByteArray(), dx, dy, dw, dh, sx, sy, rop);
+    }
+    
+    public default GdiPatternBrush dibCreatePatternBrush(Dib image, int usage) {
+    	return dibCreatePatternBrush(image.toByteArray(), usage);
+    }
+    
+    public default void dibStretchBlt(Dib image, int dx, int dy, int dw, int dh,
+			int sx, int sy, int sw, int sh, long rop) {
+    	dibStretchBlt(image.toByteArray(), dx, dy, dw, dh, sx, sy, sw, sh, rop);
+    }
+    
+    public default void setDIBitsToDevice(int dx, int dy, int dw, int dh, int sx, int sy,
+        			int startscan, int scanlines, Dib image, int colorUse) {
+    	setDIBitsToDevice(dx, dy, dw, dh, sx, sy, startscan, scanlines, image.toByteArray(), colorUse);
+    }
+    
+    public default void stretchBlt(Dib image, int dx, int dy, int dw, int dh,
+			int sx, int sy, int sw, int sh, long rop) {
+    	stretchBlt(image.toByteArray(), dx, dy, dw, dh, sx, sy, sw, sh, rop);
+    }
+    
+    public default void stretchDIBits(int dx, int dy, int dw, int dh,
+					int sx, int sy, int sw, int sh,
+					Dib image, int usage, long rop) {
+    	stretchDIBits(dx, dy, dw, dh, sx, sy, sw, sh, image.toByteArray(), usage, rop);
+    }
+    
+    /*
+     * The methods below take the points as an array of the x and y
+     * coordinates in turn (x0, y0, x1, y1, ...), so that the parser does not
+     * make a Point for each vertex. The array may be longer than the points
+     * and may be reused by the caller, so an implementation must not keep it.
+     * The defaults make the Point arrays and call the Point[] version.
+     */
+    
+    public default void polygon(int[] points, int count) {
+    	polygon(GdiUtils.toPoints(points, 0, count));
+    }
+    
+    public default void polyline(int[] points, int count) {
+    	polyline(GdiUtils.toPoints(points, 0, count));
+    }
+    
+    /**
+     * Draws the polygons whose points are in a row in the array.
+     * 
+     * @param points the coordinates of the points of all the polygons.
+     * @param counts the number of the points of each polygon.
+     * @param polygons the number of the polygons.
+     */
+    public default void polyPolygon(int[] points, int[] counts, int polygons) {
+    	Point[][] array = new Point[polygons][];
+    	int offset = 0;
+    	for (int i = 0; i < polygons; i++) {
+    		array[i] = GdiUtils.toPoints(points, offset, counts[i]);
+    		offset += counts[i];
+    	}
+    	polyPolygon(array);
+    }
 }
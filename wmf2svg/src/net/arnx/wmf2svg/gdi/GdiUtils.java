@@ -1,26 +1,39 @@
 package net.arnx.wmf2svg.gdi;
 
-import java.io.UnsupportedEncodingException;
-
 public final class GdiUtils {
-	public static String convertString(byte[] chars, int charset) {
-		String str = null;
-
-		int length = 0;
-		while (length < chars.length && chars[length] != 0) {
-			length++;
+	/**
+	 * Makes the points from an array of the x and y coordinates in turn.
+	 * 
+	 * @param points the coordinates.
+	 * @param offset the index of the first point (not of the coordinate).
+	 * @param count the number of the points.
+	 */
+	public static Point[] toPoints(int[] points, int offset, int count) {
+		Point[] array = new Point[count];
+		for (int i = 0; i < count; i++) {
+			array[i] = new Point(points[(offset + i) * 2], points[(offset + i) * 2 + 1]);
 		}
-		
-		try {
-			str = new String(chars, 0, length, getCharset(charset));
-		} catch (UnsupportedEncodingException e) {
-			try {
-				str = new String(chars, 0, length, "US-ASCII");
-			} catch (UnsupportedEncodingException e2) {
-				throw new IllegalStateException(e2);
-			}
+		return array;
+	}
+	
+	/**
+	 * Makes an array of the x and y coordinates in turn from the points.
+	 */
+	public static int[] toArray(Point[] points) {
+		int[] array = new int[points.length * 2];
+		for (int i = 0; i < points.length; i++) {
+			array[i * 2] = points[i].x;
+			array[i * 2 + 1] = points[i].y;
 		}
-		return str;
+		return array;
+	}
+	
+	/**
+	 * Decodes the bytes up to the first zero byte with the charset of a
+	 * font, by the TextDecoder of the current thread.
+	 */
+	public static String convertString(byte[] chars, int charset) {
+		return TextDecoder.get().decode(chars, charset);
 	}
 	
 	public static String getCharset(int charset) {
@@ -0,0 +1,442 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.gdi;
+
+import java.util.Arrays;
+
+/**
+ * An area made of rectangles, in the way of GDI regions.
+ *
+ * The area is kept as bands: horizontal strips, sorted from top to bottom,
+ * each of which has sorted x intervals that do not touch. Adjacent bands with
+ * the same intervals are merged. So two regions are equal if and only if they
+ * cover the same area, and the set operations are done by one sweep over the
+ * bands of both.
+ *
+ * The rectangles include the left and top edges and exclude the right and
+ * bottom edges. This class is immutable.
+ */
+public final class Region {
+	public static final Region EMPTY = new Region(new int[0], new int[] { 0 }, new int[0]);
+
+	private static final int UNION = 0;
+	private static final int INTERSECT = 1;
+	private static final int SUBTRACT = 2;
+	private static final int XOR = 3;
+
+	// top and bottom of each band
+	private final int[] ys;
+
+	// the start of the intervals of each band in xs, and the end of the last
+	private final int[] offsets;
+
+	// left and right of each interval
+	private final int[] xs;
+
+	private int hash = 0;
+
+	/**
+	 * Create a region of a rectangle. The edges may be in any order.
+	 */
+	public Region(int left, int top, int right, int bottom) {
+		int x1 = Math.min(left, right);
+		int x2 = Math.max(left, right);
+		int y1 = Math.min(top, bottom);
+		int y2 = Math.max(top, bottom);
+		if (x1 == x2 || y1 == y2) {
+			ys = EMPTY.ys;
+			offsets = EMPTY.offsets;
+			xs = EMPTY.xs;
+		} else {
+			ys = new int[] { y1, y2 };
+			offsets = new int[] { 0, 2 };
+			xs = new int[] { x1, x2 };
+		}
+	}
+
+	private Region(int[] ys, int[] offsets, int[] xs) {
+		this.ys = ys;
+		this.offsets = offsets;
+		this.xs = xs;
+	}
+
+	public Region union(Region rgn) {
+		return combine(this, rgn, UNION);
+	}
+
+	public Region intersect(Region rgn) {
+		return combine(this, rgn, INTERSECT);
+	}
+
+	/**
+	 * Returns the area of this region that is not in the specified region.
+	 */
+	public Region subtract(Region rgn) {
+		return combine(this, rgn, SUBTRACT);
+	}
+
+	public Region xor(Region rgn) {
+		return combine(this, rgn, XOR);
+	}
+
+	public Region offset(int dx, int dy) {
+		if ((dx == 0 && dy == 0) || isEmpty()) {
+			return this;
+		}
+
+		int[] nys = new int[ys.length];
+		for (int i = 0; i < ys.length; i++) {
+			nys[i] = ys[i] + dy;
+		}
+		int[] nxs = new int[xs.length];
+		for (int i = 0; i < xs.length; i++) {
+			nxs[i] = xs[i] + dx;
+		}
+		return new Region(nys, offsets, nxs);
+	}
+
+	public boolean isEmpty() {
+		return ys.length == 0;
+	}
+
+	/**
+	 * Returns true if this region is a rectangle.
+	 */
+	public boolean isRectangle() {
+		return ys.length == 2 && xs.length == 2;
+	}
+
+	/**
+	 * Returns the type of this region: GdiRegion.NULLREGION,
+	 * GdiRegion.SIMPLEREGION or GdiRegion.COMPLEXREGION.
+	 */
+	public int getType() {
+		if (isEmpty()) {
+			return GdiRegion.NULLREGION;
+		} else if (isRectangle()) {
+			return GdiRegion.SIMPLEREGION;
+		}
+		return GdiRegion.COMPLEXREGION;
+	}
+
+	public int getLeft() {
+		if (isEmpty()) return 0;
+		int left = Integer.MAX_VALUE;
+		for (int i = 0; i < offsets.length - 1; i++) {
+			left = Math.min(left, xs[offsets[i]]);
+		}
+		return left;
+	}
+
+	public int getTop() {
+		return isEmpty() ? 0 : ys[0];
+	}
+
+	public int getRight() {
+		if (isEmpty()) return 0;
+		int right = Integer.MIN_VALUE;
+		for (int i = 0; i < offsets.length - 1; i++) {
+			right = Math.max(right, xs[offsets[i + 1] - 1]);
+		}
+		return right;
+	}
+
+	public int getBottom() {
+		return isEmpty() ? 0 : ys[ys.length - 1];
+	}
+
+	/**
+	 * Returns true if the rectangle is all in this region. An empty
+	 * rectangle is always in it.
+	 */
+	public boolean contains(int left, int top, int right, int bottom) {
+		if (left >= right || top >= bottom) {
+			return true;
+		}
+
+		int y = top;
+		for (int i = 0; i < ys.length && y < bottom; i += 2) {
+			if (ys[i + 1] <= y) {
+				continue;
+			}
+			if (ys[i] > y) {
+				// a gap between the bands
+				return false;
+			}
+
+			boolean found = false;
+			for (int j = offsets[i / 2]; j < offsets[i / 2 + 1]; j += 2) {
+				if (xs[j] <= left && right <= xs[j + 1]) {
+					found = true;
+					break;
+				}
+				if (xs[j] >= right) {
+					break;
+				}
+			}
+			if (!found) {
+				return false;
+			}
+			y = ys[i + 1];
+		}
+		return y >= bottom;
+	}
+
+	/**
+	 * Returns true if the rectangle overlaps this region.
+	 */
+	public boolean intersects(int left, int top, int right, int bottom) {
+		if (left >= right || top >= bottom) {
+			return false;
+		}
+
+		for (int i = 0; i < ys.length && ys[i] < bottom; i += 2) {
+			if (ys[i + 1] <= top) {
+				continue;
+			}
+			for (int j = offsets[i / 2]; j < offsets[i / 2 + 1]; j += 2) {
+				if (xs[j] >= right) {
+					break;
+				}
+				if (xs[j + 1] > left) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of the rectangles that make this region.
+	 */
+	public int getRectCount() {
+		return xs.length / 2;
+	}
+
+	/**
+	 * Returns the rectangles that make this region, as the left, top, right
+	 * and bottom of each one. They do not overlap each other.
+	 */
+	public int[] getRects() {
+		int[] rects = new int[xs.length * 2];
+		int pos = 0;
+		for (int i = 0; i < ys.length; i += 2) {
+			for (int j = offsets[i / 2]; j < offsets[i / 2 + 1]; j += 2) {
+				rects[pos++] = xs[j];
+				rects[pos++] = ys[i];
+				rects[pos++] = xs[j + 1];
+				rects[pos++] = ys[i + 1];
+			}
+		}
+		return rects;
+	}
+
+	private static Region combine(Region a, Region b, int op) {
+		// the trivial cases
+		if (a.isEmpty()) {
+			return (op == UNION || op == XOR) ? b : EMPTY;
+		}
+		if (b.isEmpty()) {
+			return (op == INTERSECT) ? EMPTY : a;
+		}
+		if (op == INTERSECT || op == SUBTRACT) {
+			if (a.getTop() >= b.getBottom() || b.getTop() >= a.getBottom()) {
+				return (op == INTERSECT) ? EMPTY : a;
+			}
+		}
+
+		Builder builder = new Builder(a.xs.length + b.xs.length);
+
+		// the edges of the bands of both, in order
+		int[] edges = new int[a.ys.length + b.ys.length];
+		int count = 0;
+		for (int i = 0, j = 0; i < a.ys.length || j < b.ys.length; ) {
+			int y;
+			if (j >= b.ys.length || (i < a.ys.length && a.ys[i] <= b.ys[j])) {
+				y = a.ys[i++];
+			} else {
+				y = b.ys[j++];
+			}
+			if (count == 0 || edges[count - 1] != y) {
+				edges[count++] = y;
+			}
+		}
+
+		int ai = 0;
+		int bi = 0;
+		for (int k = 0; k < count - 1; k++) {
+			int top = edges[k];
+			int bottom = edges[k + 1];
+
+			while (ai < a.ys.length && a.ys[ai + 1] <= top) ai += 2;
+			while (bi < b.ys.length && b.ys[bi + 1] <= top) bi += 2;
+
+			boolean inA = (ai < a.ys.length && a.ys[ai] <= top);
+			boolean inB = (bi < b.ys.length && b.ys[bi] <= top);
+			if (!inA && !inB) {
+				continue;
+			}
+
+			int aStart = inA ? a.offsets[ai / 2] : 0;
+			int aEnd = inA ? a.offsets[ai / 2 + 1] : 0;
+			int bStart = inB ? b.offsets[bi / 2] : 0;
+			int bEnd = inB ? b.offsets[bi / 2 + 1] : 0;
+			builder.addBand(top, bottom, a.xs, aStart, aEnd, b.xs, bStart, bEnd, op);
+		}
+
+		return builder.toRegion();
+	}
+
+	public int hashCode() {
+		int h = hash;
+		if (h == 0 && !isEmpty()) {
+			h = Arrays.hashCode(ys);
+			h = 31 * h + Arrays.hashCode(offsets);
+			h = 31 * h + Arrays.hashCode(xs);
+			hash = h;
+		}
+		return h;
+	}
+
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		Region other = (Region) obj;
+		return Arrays.equals(ys, other.ys)
+			&& Arrays.equals(offsets, other.offsets)
+			&& Arrays.equals(xs, other.xs);
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder("Region [");
+		int[] rects = getRects();
+		for (int i = 0; i < rects.length; i += 4) {
+			if (i > 0) sb.append(", ");
+			sb.append("(").append(rects[i]).append(", ").append(rects[i + 1])
+				.append(", ").append(rects[i + 2]).append(", ").append(rects[i + 3]).append(")");
+		}
+		return sb.append("]").toString();
+	}
+
+	private static class Builder {
+		private int[] ys = new int[16];
+		private int[] offsets = new int[9];
+		private int[] xs;
+		private int bandCount = 0;
+		private int xCount = 0;
+
+		public Builder(int capacity) {
+			xs = new int[Math.max(capacity, 8)];
+		}
+
+		/**
+		 * Adds a band of the intervals combined from two lists.
+		 */
+		public void addBand(int top, int bottom,
+				int[] a, int aStart, int aEnd, int[] b, int bStart, int bEnd, int op) {
+			int start = xCount;
+
+			// the state changes at each edge of the intervals of both lists
+			int i = aStart;
+			int j = bStart;
+			boolean inside = false;
+			int left = 0;
+			while (i < aEnd || j < bEnd) {
+				int x;
+				if (j >= bEnd || (i < aEnd && a[i] <= b[j])) {
+					x = a[i];
+				} else {
+					x = b[j];
+				}
+				while (i < aEnd && a[i] == x) i++;
+				while (j < bEnd && b[j] == x) j++;
+
+				boolean inA = ((i - aStart) % 2 == 1);
+				boolean inB = ((j - bStart) % 2 == 1);
+				boolean now;
+				switch (op) {
+				case UNION: now = inA || inB; break;
+				case INTERSECT: now = inA && inB; break;
+				case SUBTRACT: now = inA && !inB; break;
+				default: now = inA != inB; break;
+				}
+
+				if (now != inside) {
+					if (now) {
+						left = x;
+					} else {
+						addInterval(left, x);
+					}
+					inside = now;
+				}
+			}
+
+			if (xCount == start) {
+				return;
+			}
+
+			// merges with the band above if it has the same intervals
+			if (bandCount > 0 && ys[bandCount * 2 - 1] == top) {
+				int prev = offsets[bandCount - 1];
+				int length = start - prev;
+				if (length == xCount - start) {
+					boolean same = true;
+					for (int k = 0; k < length; k++) {
+						if (xs[prev + k] != xs[start + k]) {
+							same = false;
+							break;
+						}
+					}
+					if (same) {
+						ys[bandCount * 2 - 1] = bottom;
+						xCount = start;
+						return;
+					}
+				}
+			}
+
+			if (bandCount * 2 + 2 > ys.length) {
+				ys = Arrays.copyOf(ys, ys.length * 2);
+				offsets = Arrays.copyOf(offsets, ys.length / 2 + 1);
+			}
+			ys[bandCount * 2] = top;
+			ys[bandCount * 2 + 1] = bottom;
+			offsets[bandCount] = start;
+			bandCount++;
+		}
+
+		private void addInterval(int left, int right) {
+			if (xCount + 2 > xs.length) {
+				xs = Arrays.copyOf(xs, xs.length * 2);
+			}
+			xs[xCount++] = left;
+			xs[xCount++] = right;
+		}
+
+		public Region toRegion() {
+			if (bandCount == 0) {
+				return EMPTY;
+			}
+			int[] offsets = Arrays.copyOf(this.offsets, bandCount + 1);
+			offsets[bandCount] = xCount;
+			return new Region(Arrays.copyOf(ys, bandCount * 2), offsets, Arrays.copyOf(xs, xCount));
+		}
+	}
+}
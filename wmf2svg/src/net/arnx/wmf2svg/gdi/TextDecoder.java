@@ -0,0 +1,189 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.gdi;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Arrays;
+
+/**
+ * Decodes the text of the records with the charset of a font.
+ *
+ * The Charset of each GDI charset is looked up only once, and an instance
+ * reuses a CharsetDecoder for each GDI charset and one CharBuffer, so an
+ * instance must be used by one thread. The boundaries of the double byte
+ * characters are found in the same pass as the end of the text, and the
+ * widths of the last decoded text can be merged by them with toCharDx().
+ */
+public final class TextDecoder {
+	private static final Charset[] CHARSETS = new Charset[256];
+
+	// the lead bytes of the double byte characters, or null
+	private static final boolean[][] LEAD_BYTES = new boolean[256][];
+
+	static {
+		for (int i = 0; i < CHARSETS.length; i++) {
+			Charset cs;
+			try {
+				cs = Charset.forName(GdiUtils.getCharset(i));
+			} catch (IllegalCharsetNameException e) {
+				cs = StandardCharsets.US_ASCII;
+			} catch (UnsupportedCharsetException e) {
+				cs = StandardCharsets.US_ASCII;
+			}
+			CHARSETS[i] = cs;
+
+			int[][] area = GdiUtils.getFirstByteArea(i);
+			if (area != null) {
+				boolean[] leads = new boolean[256];
+				for (int j = 0; j < area.length; j++) {
+					for (int c = area[j][0]; c <= area[j][1]; c++) {
+						leads[c] = true;
+					}
+				}
+				LEAD_BYTES[i] = leads;
+			}
+		}
+	}
+
+	private static final ThreadLocal<TextDecoder> DECODERS = new ThreadLocal<TextDecoder>() {
+		protected TextDecoder initialValue() {
+			return new TextDecoder();
+		}
+	};
+
+	private CharsetDecoder[] decoders = new CharsetDecoder[256];
+	private CharBuffer out = CharBuffer.allocate(256);
+
+	// true at the trailing bytes of the double byte characters
+	private boolean[] trails = new boolean[256];
+	private int byteCount = 0;
+	private boolean doubleByte = false;
+
+	/**
+	 * Returns the instance of the current thread.
+	 */
+	public static TextDecoder get() {
+		return DECODERS.get();
+	}
+
+	/**
+	 * Returns the Java charset of a GDI charset. The unsupported charsets
+	 * are US-ASCII.
+	 */
+	public static Charset getCharset(int charset) {
+		if (charset < 0 || charset >= CHARSETS.length) {
+			charset = GdiFont.DEFAULT_CHARSET;
+		}
+		return CHARSETS[charset];
+	}
+
+	/**
+	 * Decodes the bytes up to the first zero byte.
+	 *
+	 * @param chars the bytes of the text.
+	 * @param charset the GDI charset of the font.
+	 * @return the text.
+	 */
+	public String decode(byte[] chars, int charset) {
+		if (charset < 0 || charset >= CHARSETS.length) {
+			charset = GdiFont.DEFAULT_CHARSET;
+		}
+
+		boolean[] leads = LEAD_BYTES[charset];
+		if (trails.length < chars.length) {
+			trails = new boolean[Math.max(chars.length, trails.length * 2)];
+		}
+
+		int length = -1;
+		boolean trail = false;
+		for (int i = 0; i < chars.length; i++) {
+			int c = chars[i] & 0xFF;
+			if (c == 0 && length == -1) {
+				length = i;
+				if (leads == null) break;
+			}
+			if (leads != null) {
+				trails[i] = trail;
+				trail = !trail && leads[c];
+			}
+		}
+		if (length == -1) {
+			length = chars.length;
+		}
+		byteCount = chars.length;
+		doubleByte = (leads != null);
+
+		if (length == 0) {
+			return "";
+		}
+
+		CharsetDecoder decoder = decoders[charset];
+		if (decoder == null) {
+			decoder = CHARSETS[charset].newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			decoders[charset] = decoder;
+		} else {
+			decoder.reset();
+		}
+
+		int capacity = (int)(length * (double)decoder.maxCharsPerByte()) + 1;
+		if (out.capacity() < capacity) {
+			out = CharBuffer.allocate(Math.max(capacity, out.capacity() * 2));
+		}
+		out.clear();
+		decoder.decode(ByteBuffer.wrap(chars, 0, length), out, true);
+		decoder.flush(out);
+		out.flip();
+		return out.toString();
+	}
+
+	/**
+	 * Merges the widths of the bytes of the last decoded text into the
+	 * widths of the characters, in the same way as Windows does for the
+	 * double byte charsets. The array may be changed.
+	 *
+	 * @param dx the widths of the bytes.
+	 * @return the widths of the characters, that is dx itself if the charset
+	 * has no double byte characters, or null if dx is null or empty.
+	 */
+	public int[] toCharDx(int[] dx) {
+		if (dx == null || dx.length == 0) {
+			return null;
+		}
+		if (!doubleByte) {
+			return dx;
+		}
+
+		int n = 0;
+		int limit = Math.min(byteCount, dx.length);
+		for (int i = 0; i < limit; i++) {
+			if (trails[i]) {
+				dx[n - 1] += dx[i];
+			} else {
+				dx[n++] = dx[i];
+			}
+		}
+		return Arrays.copyOf(dx, n);
+	}
+}
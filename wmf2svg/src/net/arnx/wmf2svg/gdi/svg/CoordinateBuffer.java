@@ -0,0 +1,176 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.gdi.svg;
+
+/**
+ * A reusable buffer to make the values of the SVG attributes.
+ *
+ * The numbers are written as characters directly, without the temporary
+ * strings of Integer.toString or the string concatenation. The decimals are
+ * rounded to a fixed number of the fraction digits, and the trailing zeros
+ * are dropped. This class is not thread safe.
+ */
+public final class CoordinateBuffer {
+	private static final long[] POWERS_OF_TEN = {
+		1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L
+	};
+
+	private final int precision;
+	private final long scale;
+	private final double limit;
+	private char[] buf = new char[64];
+	private int len = 0;
+
+	/**
+	 * Create a CoordinateBuffer class instance.
+	 *
+	 * @param precision the number of the fraction digits of decimals (0 - 8).
+	 */
+	public CoordinateBuffer(int precision) {
+		if (precision < 0 || precision >= POWERS_OF_TEN.length) {
+			throw new IllegalArgumentException("precision: " + precision);
+		}
+		this.precision = precision;
+		this.scale = POWERS_OF_TEN[precision];
+		this.limit = (double)(Long.MAX_VALUE / scale);
+	}
+
+	public int getPrecision() {
+		return precision;
+	}
+
+	public CoordinateBuffer append(int value) {
+		appendLong(value);
+		return this;
+	}
+
+	public CoordinateBuffer append(double value) {
+		if (Double.isNaN(value) || Math.abs(value) >= limit) {
+			return append(Double.toString(value));
+		}
+
+		long n = Math.round(value * scale);
+		if (n == 0) {
+			return append('0');
+		}
+		if (n < 0) {
+			append('-');
+			n = -n;
+		}
+		appendLong(n / scale);
+
+		long fraction = n % scale;
+		if (fraction != 0) {
+			ensureCapacity(precision + 1);
+			buf[len++] = '.';
+			int start = len;
+			for (int i = precision - 1; i >= 0; i--) {
+				buf[start + i] = (char)('0' + (fraction % 10));
+				fraction /= 10;
+			}
+			len = start + precision;
+			while (buf[len - 1] == '0') {
+				len--;
+			}
+		}
+		return this;
+	}
+
+	public CoordinateBuffer append(char c) {
+		ensureCapacity(1);
+		buf[len++] = c;
+		return this;
+	}
+
+	public CoordinateBuffer append(String str) {
+		int n = str.length();
+		ensureCapacity(n);
+		str.getChars(0, n, buf, len);
+		len += n;
+		return this;
+	}
+
+	/**
+	 * Returns an integer as a string. The contents of the buffer are kept.
+	 */
+	public String format(int value) {
+		int start = len;
+		append(value);
+		return cut(start);
+	}
+
+	/**
+	 * Returns a decimal as a string. The contents of the buffer are kept.
+	 */
+	public String format(double value) {
+		int start = len;
+		append(value);
+		return cut(start);
+	}
+
+	public int length() {
+		return len;
+	}
+
+	public void setLength(int length) {
+		if (length < 0 || length > len) {
+			throw new IndexOutOfBoundsException("length: " + length);
+		}
+		len = length;
+	}
+
+	public String toString() {
+		return new String(buf, 0, len);
+	}
+
+	private String cut(int start) {
+		String str = new String(buf, start, len - start);
+		len = start;
+		return str;
+	}
+
+	private void appendLong(long value) {
+		// 20 characters are enough for any long value.
+		ensureCapacity(20);
+		if (value < 0) {
+			buf[len++] = '-';
+			if (value == Long.MIN_VALUE) {
+				append("9223372036854775808");
+				return;
+			}
+			value = -value;
+		}
+
+		int digits = 1;
+		for (long v = value / 10; v != 0; v /= 10) {
+			digits++;
+		}
+		int pos = len + digits;
+		len = pos;
+		do {
+			buf[--pos] = (char)('0' + (value % 10));
+			value /= 10;
+		} while (value != 0);
+	}
+
+	private void ensureCapacity(int n) {
+		if (len + n > buf.length) {
+			char[] nbuf = new char[Math.max(buf.length * 2, len + n)];
+			System.arraycopy(buf, 0, nbuf, 0, len);
+			buf = nbuf;
+		}
+	}
+}
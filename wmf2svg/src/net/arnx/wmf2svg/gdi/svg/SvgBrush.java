@@ -55,7 +55,7 @@ class SvgBrush extends SvgObject implements GdiBrush {
 		Element pattern = null;
 		
 		if (style == BS_HATCHED) {
-			pattern = getGDI().getDocument().createElement("pattern");
+			pattern = getGDI().getOwnerDocument().createElement("pattern");
 			pattern.setAttribute("id", id);
 			pattern.setAttribute("patternUnits", "userSpaceOnUse");
 			pattern.setAttribute("x", "" + toRealSize(0));
@@ -64,7 +64,7 @@ class SvgBrush extends SvgObject implements GdiBrush {
 			pattern.setAttribute("height", "" + toRealSize(8));
 
 			if (getGDI().getDC().getBkMode() == Gdi.OPAQUE) {
-				Element rect = getGDI().getDocument().createElement("rect");
+				Element rect = getGDI().getOwnerDocument().createElement("rect");
 				rect.setAttribute("fill", toColor(getGDI().getDC().getBkColor()));
 				rect.setAttribute("x", "" + toRealSize(0));
 				rect.setAttribute("y", "" + toRealSize(0));
@@ -75,7 +75,7 @@ class SvgBrush extends SvgObject implements GdiBrush {
 			
 			switch (hatch) {
 				case HS_HORIZONTAL: {
-					Element path = getGDI().getDocument().createElement("line");
+					Element path = getGDI().getOwnerDocument().createElement("line");
 					path.setAttribute("stroke", toColor(color));
 					path.setAttribute("x1", "" + toRealSize(0));
 					path.setAttribute("y1", "" + toRealSize(4));
@@ -84,7 +84,7 @@ class SvgBrush extends SvgObject implements GdiBrush {
 					pattern.appendChild(path);
 				} break;
 				case HS_VERTICAL: {
-					Element path = getGDI().getDocument().createElement("line");
+					Element path = getGDI().getOwnerDocument().createElement("line");
 					path.setAttribute("stroke", toColor(color));
 					path.setAttribute("x1", "" + toRealSize(4));
 					path.setAttribute("y1", "" + toRealSize(0));
@@ -93,7 +93,7 @@ class SvgBrush extends SvgObject implements GdiBrush {
 					pattern.appendChild(path);
 				} break;
 				case HS_FDIAGONAL: {
-					Element path = getGDI().getDocument().createElement("line");
+					Element path = getGDI().getOwnerDocument().createElement("line");
 					path.setAttribute("stroke", toColor(color));
 					path.setAttribute("x1", "" + toRealSize(0));
 					path.setAttribute("y1", "" + toRealSize(0));
@@ -102,7 +102,7 @@ class SvgBrush extends SvgObject implements GdiBrush {
 					pattern.appendChild(path);
 				} break;
 				case HS_BDIAGONAL: {
-					Element path = getGDI().getDocument().createElement("line");
+					Element path = getGDI().getOwnerDocument().createElement("line");
 					path.setAttribute("stroke", toColor(color));
 					path.setAttribute("x1", "" + toRealSize(0));
 					path.setAttribute("y1", "" + toRealSize(8));
@@ -111,14 +111,14 @@ class SvgBrush extends SvgObject implements GdiBrush {
 					pattern.appendChild(path);
 				} break;
 				case HS_CROSS: {
-					Element path1 = getGDI().getDocument().createElement("line");
+					Element path1 = getGDI().getOwnerDocument().createElement("line");
 					path1.setAttribute("stroke", toColor(color));
 					path1.setAttribute("x1", "" + toRealSize(0));
 					path1.setAttribute("y1", "" + toRealSize(4));
 					path1.setAttribute("x2", "" + toRealSize(8));
 					path1.setAttribute("y2", "" + toRealSize(4));
 					pattern.appendChild(path1);
-					Element path2 = getGDI().getDocument().createElement("line");
+					Element path2 = getGDI().getOwnerDocument().createElement("line");
 					path2.setAttribute("stroke", toColor(color));
 					path2.setAttribute("x1", "" + toRealSize(4));
 					path2.setAttribute("y1", "" + toRealSize(0));
@@ -127,14 +127,14 @@ class SvgBrush extends SvgObject implements GdiBrush {
 					pattern.appendChild(path2);
 				} break;
 				case HS_DIAGCROSS: {
-					Element path1 = getGDI().getDocument().createElement("line");
+					Element path1 = getGDI().getOwnerDocument().createElement("line");
 					path1.setAttribute("stroke", toColor(color));
 					path1.setAttribute("x1", "" + toRealSize(0));
 					path1.setAttribute("y1", "" + toRealSize(0));
 					path1.setAttribute("x2", "" + toRealSize(8));
 					path1.setAttribute("y2", "" + toRealSize(8));
 					pattern.appendChild(path1);
-					Element path2 = getGDI().getDocument().createElement("line");
+					Element path2 = getGDI().getOwnerDocument().createElement("line");
 					path2.setAttribute("stroke", toColor(color));
 					path2.setAttribute("x1", "" + toRealSize(0));
 					path2.setAttribute("y1", "" + toRealSize(8));
@@ -175,7 +175,7 @@ class SvgBrush extends SvgObject implements GdiBrush {
 	}
 	
 	public Text createTextNode(String id) {
-		return getGDI().getDocument().createTextNode("." + id + " { " + toString() + " }\n");
+		return getGDI().getOwnerDocument().createTextNode("." + id + " { " + toString() + " }\n");
 	}
 	
 	public String toString() {
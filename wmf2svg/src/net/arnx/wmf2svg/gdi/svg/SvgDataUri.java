@@ -0,0 +1,102 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.gdi.svg;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import net.arnx.wmf2svg.util.Base64;
+
+/**
+ * A base64 data URI whose text is made when it is written.
+ *
+ * In the streaming mode, it is attached to an attribute by {@link SvgWriter}
+ * and encoded into the output by chunks. So the encoded text is never held
+ * in memory.
+ *
+ * The data may be the result of a task that is still running. It is waited
+ * for when the text is needed. If the result is null, the text is empty.
+ */
+class SvgDataUri {
+	private String type;
+	private byte[] data;
+	private Future<byte[]> future;
+
+	public SvgDataUri(String type, byte[] data) {
+		this.type = type;
+		this.data = data;
+	}
+
+	public SvgDataUri(String type, Future<byte[]> future) {
+		this.type = type;
+		this.future = future;
+	}
+
+	private byte[] getData() {
+		if (future != null) {
+			try {
+				data = future.get();
+				future = null;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException)e.getCause();
+				} else if (e.getCause() instanceof Error) {
+					throw (Error)e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Returns true if the data is null. It waits for the task if the data
+	 * is not made yet.
+	 */
+	public boolean isEmpty() {
+		return getData() == null;
+	}
+
+	public void write(Writer writer) throws IOException {
+		byte[] data = getData();
+		if (data == null) {
+			return;
+		}
+
+		writer.write("data:");
+		writer.write(type);
+		writer.write(";base64,");
+		Base64.encode(data, writer);
+	}
+
+	public String toString() {
+		byte[] data = getData();
+		if (data == null) {
+			return "";
+		}
+
+		String prefix = "data:" + type + ";base64,";
+		char[] buffer = new char[prefix.length() + (data.length + 2) / 3 * 4];
+		prefix.getChars(0, prefix.length(), buffer, 0);
+		Base64.encode(data, 0, data.length, buffer, prefix.length());
+		return new String(buffer);
+	}
+}
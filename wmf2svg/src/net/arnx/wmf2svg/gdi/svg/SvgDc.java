@@ -45,6 +45,15 @@ public class SvgDc implements Cloneable {
 	private double mx = 1.0;
 	private double my = 1.0;
 	
+	// the mapping to the absolute coordinates: (ax * x + bx) / dx.
+	// it is updated when the window or the mapping mode is changed.
+	private double ax = 1.0;
+	private double bx = 0.0;
+	private double dx = 1.0;
+	private double ay = 1.0;
+	private double by = 0.0;
+	private double dy = 1.0;
+	
 	// viewport
 	private int vx = 0;
 	private int vy = 0;
@@ -85,7 +94,8 @@ public class SvgDc implements Cloneable {
 	private SvgFont font = null;
 	private SvgPen pen = null;
 	
-	private Element mask = null;
+	// the clip in the absolute coordinates, or null if not clipped
+	private Region clip = null;
 	
 	public SvgDc(SvgGdi gdi) {
 		this.gdi = gdi;
@@ -102,6 +112,7 @@ public class SvgDc implements Cloneable {
 		}
 		wx = x;
 		wy = y;
+		updateTransform();
 	}
 	
 	public void setWindowExtEx(int width, int height, Size old) {
@@ -111,6 +122,7 @@ public class SvgDc implements Cloneable {
 		}
 		ww = width;
 		wh = height;
+		updateTransform();
 	}
 	
 	public void offsetWindowOrgEx(int x, int y, Point old) {
@@ -120,12 +132,14 @@ public class SvgDc implements Cloneable {
 		}
 		wox += x;
 		woy += y;
+		updateTransform();
 	}
 	
 	public void scaleWindowExtEx(int x, int xd, int y, int yd, Size old) {
 		// TODO
 		wsx = (wsx * x)/xd;
 		wsy = (wsy * y)/yd;
+		updateTransform();
 	}
 	
 	public int getWindowX() {
@@ -213,6 +227,7 @@ public class SvgDc implements Cloneable {
 				mx = 1.0;
 				my = 1.0;
 		}
+		updateTransform();
 	}
 	
 	public int getCurrentX() {
@@ -242,22 +257,56 @@ public class SvgDc implements Cloneable {
 	
 	public double toAbsoluteX(double x) {
 		// TODO Handle Viewport
-		return ((ww >= 0) ? 1 : -1) * (mx * x - (wx + wox)) / wsx;
+		return (ax * x + bx) / dx;
 	}
 	
 	public double toAbsoluteY(double y) {
 		// TODO Handle Viewport
-		return ((wh >= 0) ? 1 : -1) * (my * y - (wy + woy)) / wsy;
+		return (ay * y + by) / dy;
 	}
 	
 	public double toRelativeX(double x) {
 		// TODO Handle Viewport
-		return ((ww >= 0) ? 1 : -1) * (mx * x) / wsx;
+		return (ax * x) / dx;
 	}
 	
 	public double toRelativeY(double y) {
 		// TODO Handle Viewport
-		return ((wh >= 0) ? 1 : -1) * (my * y) / wsy;
+		return (ay * y) / dy;
+	}
+	
+	/**
+	 * Converts the points to the absolute coordinates, that are truncated to
+	 * integers in the same way as (int)toAbsoluteX(x).
+	 * 
+	 * @param points the x and y coordinates of the points in turn.
+	 * @param count the number of the points.
+	 * @param dest the array for the results. It may be the same as points.
+	 */
+	public void toAbsolute(int[] points, int count, int[] dest) {
+		double ax = this.ax;
+		double bx = this.bx;
+		double dx = this.dx;
+		double ay = this.ay;
+		double by = this.by;
+		double dy = this.dy;
+		for (int i = 0; i < count * 2; i += 2) {
+			dest[i] = (int)((ax * points[i] + bx) / dx);
+			dest[i + 1] = (int)((ay * points[i + 1] + by) / dy);
+		}
+	}
+	
+	private void updateTransform() {
+		// the same as sign * (m * x - (w + wo)) / ws, without the rounding
+		// differences.
+		double sx = (ww >= 0) ? 1 : -1;
+		double sy = (wh >= 0) ? 1 : -1;
+		ax = sx * mx;
+		bx = -sx * (wx + wox);
+		dx = wsx;
+		ay = sy * my;
+		by = -sy * (wy + woy);
+		dy = wsy;
 	}
 	
 	public void setDpi(int dpi) {
@@ -384,23 +433,28 @@ public class SvgDc implements Cloneable {
 		this.pen = pen;
 	}
 	
-	public void setMask(Element mask) {
-		this.mask = mask;
+	public void setClipRegion(Region clip) {
+		this.clip = clip;
 	}
 	
-	public Element getMask() {
-		return mask;
+	/**
+	 * Returns the clip in the absolute coordinates.
+	 * 
+	 * @return the clip, or null if not clipped.
+	 */
+	public Region getClipRegion() {
+		return clip;
 	}
 	
 	public String getRopFilter(long rop) {
 		String name = null;
-		Document doc = gdi.getDocument();
+		Document doc = gdi.getOwnerDocument();
 		
 		if (rop == Gdi.BLACKNESS) {
 			name = "BLACKNESS_FILTER";
 			Element filter = doc.getElementById(name);
 			if (filter == null) {
-				filter = gdi.getDocument().createElement("filter");
+				filter = gdi.getOwnerDocument().createElement("filter");
 				filter.setAttribute("id", name);
 				filter.setIdAttribute("id", true);
 				
@@ -416,7 +470,7 @@ public class SvgDc implements Cloneable {
 			name = "NOTSRCERASE_FILTER";
 			Element filter = doc.getElementById(name);
 			if (filter == null) {
-				filter = gdi.getDocument().createElement("filter");
+				filter = gdi.getOwnerDocument().createElement("filter");
 				filter.setAttribute("id", name);
 				filter.setIdAttribute("id", true);
 				
@@ -439,7 +493,7 @@ public class SvgDc implements Cloneable {
 			name = "NOTSRCCOPY_FILTER";
 			Element filter = doc.getElementById(name);
 			if (filter == null) {
-				filter = gdi.getDocument().createElement("filter");
+				filter = gdi.getOwnerDocument().createElement("filter");
 				filter.setAttribute("id", name);
 				filter.setIdAttribute("id", true);
 				
@@ -455,7 +509,7 @@ public class SvgDc implements Cloneable {
 			name = "SRCERASE_FILTER";
 			Element filter = doc.getElementById(name);
 			if (filter == null) {
-				filter = gdi.getDocument().createElement("filter");
+				filter = gdi.getOwnerDocument().createElement("filter");
 				filter.setAttribute("id", name);
 				filter.setIdAttribute("id", true);
 
@@ -484,7 +538,7 @@ public class SvgDc implements Cloneable {
 			name = "DSTINVERT_FILTER";
 			Element filter = doc.getElementById(name);
 			if (filter == null) {
-				filter = gdi.getDocument().createElement("filter");
+				filter = gdi.getOwnerDocument().createElement("filter");
 				filter.setAttribute("id", name);
 				filter.setIdAttribute("id", true);
 				
@@ -500,7 +554,7 @@ public class SvgDc implements Cloneable {
 			name = "SRCAND_FILTER";
 			Element filter = doc.getElementById(name);
 			if (filter == null) {
-				filter = gdi.getDocument().createElement("filter");
+				filter = gdi.getOwnerDocument().createElement("filter");
 				filter.setAttribute("id", name);
 				filter.setIdAttribute("id", true);
 				
@@ -517,7 +571,7 @@ public class SvgDc implements Cloneable {
 			name = "MERGEPAINT_FILTER";
 			Element filter = doc.getElementById(name);
 			if (filter == null) {
-				filter = gdi.getDocument().createElement("filter");
+				filter = gdi.getOwnerDocument().createElement("filter");
 				filter.setAttribute("id", name);
 				filter.setIdAttribute("id", true);
 
@@ -543,7 +597,7 @@ public class SvgDc implements Cloneable {
 			name = "SRCPAINT_FILTER";
 			Element filter = doc.getElementById(name);
 			if (filter == null) {
-				filter = gdi.getDocument().createElement("filter");
+				filter = gdi.getOwnerDocument().createElement("filter");
 				filter.setAttribute("id", name);
 				filter.setIdAttribute("id", true);
 				
@@ -565,7 +619,7 @@ public class SvgDc implements Cloneable {
 			name = "WHITENESS_FILTER";
 			Element filter = doc.getElementById(name);
 			if (filter == null) {
-				filter = gdi.getDocument().createElement("filter");
+				filter = gdi.getOwnerDocument().createElement("filter");
 				filter.setAttribute("id", name);
 				filter.setIdAttribute("id", true);
 				
@@ -79,17 +79,7 @@ class SvgFont extends SvgObject implements GdiFont {
 		// xml:lang
 		this.lang = GdiUtils.getLanguage(charset);
 		
-		String emheight = gdi.getProperty("font-emheight." + this.faceName);
-		if (emheight == null) {
-			String alter = gdi.getProperty("alternative-font." + this.faceName);
-			if (alter != null) {
-				emheight = gdi.getProperty("font-emheight." + alter);
-			}
-		}
-		
-		if (emheight != null) {
-			this.heightMultiply = Double.parseDouble(emheight);
-		}
+		this.heightMultiply = gdi.getConfig().getFontEmHeight(this.faceName);
 	}
 	
 	public int getHeight() {
@@ -152,44 +142,6 @@ class SvgFont extends SvgObject implements GdiFont {
 		return lang;
 	}
 
-	public int[] validateDx(byte[] chars, int[] dx) {
-		if (dx == null || dx.length == 0) {
-			return null;
-		}
-
-		int[][] area = GdiUtils.getFirstByteArea(charset);
-		if (area == null) {
-			return dx;
-		}
-
-		int n = 0;
-		boolean skip = false;
-
-		for (int i = 0; i < chars.length && i < dx.length; i++) {
-			int c = (0xFF & chars[i]);
-
-			if (skip) {
-				dx[n - 1] += dx[i];
-				skip = false;
-				continue;
-			}
-
-			for (int j = 0; j < area.length; j++) {
-				if (area[j][0] <= c && c <= area[j][1]) {
-					skip = true;
-					break;
-				}
-			}
-
-			dx[n++] = dx[i];
-		}
-
-		int[] ndx = new int[n];
-		System.arraycopy(dx, 0, ndx, 0, n);
-
-		return ndx;
-	}
-	
 	public int getFontSize() {
 		return Math.abs((int)getGDI().getDC().toRelativeY(height * heightMultiply));
 	}
@@ -257,7 +209,7 @@ class SvgFont extends SvgObject implements GdiFont {
 	}
 	
 	public Text createTextNode(String id) {
-		return getGDI().getDocument().createTextNode("." + id + " { " + toString() + " }\n");
+		return getGDI().getOwnerDocument().createTextNode("." + id + " { " + toString() + " }\n");
 	}
 	
 	public String toString() {
@@ -295,7 +247,7 @@ class SvgFont extends SvgObject implements GdiFont {
 			if (faceName.charAt(0) == '@') fontFamily = faceName.substring(1);
 			fontList.add(fontFamily);
 
-			String altfont = getGDI().getProperty("alternative-font." + fontFamily);
+			String altfont = getGDI().getConfig().getAlternativeFont(fontFamily);
 			if (altfont != null && altfont.length() != 0) {
 				fontList.add(altfont);
 			}
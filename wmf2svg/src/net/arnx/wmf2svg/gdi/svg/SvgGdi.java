@@ -16,16 +16,22 @@
 package net.arnx.wmf2svg.gdi.svg;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Logger;
 
 import javax.xml.parsers.*;
 import org.w3c.dom.*;
 
 import net.arnx.wmf2svg.gdi.*;
-import net.arnx.wmf2svg.util.Base64;
+import net.arnx.wmf2svg.util.ImageCache;
 import net.arnx.wmf2svg.util.ImageUtil;
+import net.arnx.wmf2svg.util.PngEncoder;
 
 /**
  * @author Hidekatsu Izuno
@@ -34,11 +40,13 @@ import net.arnx.wmf2svg.util.ImageUtil;
 public class SvgGdi implements Gdi {
 	private static Logger log = Logger.getLogger(SvgGdi.class.getName());
 	
+	private SvgGdiConfig config;
+	
 	private boolean compatible;
 	
-	private boolean replaceSymbolFont = false;
+	private boolean replaceSymbolFont;
 	
-	private Properties props = new Properties();
+	private DocumentBuilder builder;
 
 	private SvgDc dc;
 
@@ -51,6 +59,12 @@ public class SvgGdi implements Gdi {
 	private Element styleNode = null;
 	
 	private Element defsNode = null;
+	
+	private SvgWriter writer = null;
+	
+	private ImageCache imageCache = null;
+	
+	private Executor imageExecutor = null;
 
 	private int brushNo = 0;
 
@@ -64,11 +78,44 @@ public class SvgGdi implements Gdi {
 	
 	private int clipPathNo = 0;
 	
-	private int maskNo = 0;
+	private int imageNo = 0;
+	
+	private int symbolNo = 0;
 	
 	private Map nameMap = new HashMap();
+	
+	// digest of the bitmap -> the image element in defs
+	private Map<String, Element> imageMap = new HashMap<String, Element>();
+	
+	// image id and viewBox -> the id of the symbol element in defs
+	private Map<String, String> symbolMap = new HashMap<String, String>();
+	
+	// hatch, color, background and scale -> the id of the pattern element in defs
+	private Map<String, String> patternMap = new HashMap<String, String>();
+	
+	// clip region -> the id of the clipPath element in defs
+	private Map<Region, String> clipMap = new HashMap<Region, String>();
+	
+	// the clip of the current group, or null if not clipped
+	private Region groupClip = null;
 
-	private StringBuffer buffer = new StringBuffer();
+	private CoordinateBuffer buffer;
+	
+	// the lines drawn since the last change of the pen or the clip
+	private CoordinateBuffer pathBuffer;
+	
+	// the points converted to the absolute coordinates
+	private int[] absolutePoints = new int[64];
+	
+	private TextDecoder decoder = new TextDecoder();
+	
+	// the end and the bounds of the lines in the absolute coordinates
+	private int pathX;
+	private int pathY;
+	private double pathLeft;
+	private double pathTop;
+	private double pathRight;
+	private double pathBottom;
 
 	private SvgBrush defaultBrush;
 
@@ -76,37 +123,80 @@ public class SvgGdi implements Gdi {
 
 	private SvgFont defaultFont;
 	
+	private boolean ended = false;
+	
 	public SvgGdi() throws SvgGdiException {
 		this(false);
 	}
 	
 	public SvgGdi(boolean compatible) throws SvgGdiException {
-		this.compatible = compatible;
+		this(SvgGdiConfig.getDefault().withFlags(compatible, false));
+	}
+	
+	/**
+	 * Create a SvgGdi class instance with a configuration, that may be shared
+	 * by the instances on other threads.
+	 * 
+	 * @param config the configuration.
+	 */
+	public SvgGdi(SvgGdiConfig config) throws SvgGdiException {
+		this.config = config;
+		this.compatible = config.isCompatible();
+		this.replaceSymbolFont = config.isReplaceSymbolFont();
+		this.builder = config.newDocumentBuilder();
+		this.buffer = new CoordinateBuffer(config.getPrecision());
+		this.pathBuffer = new CoordinateBuffer(config.getPrecision());
 		
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder builder = null;
-		try {
-			builder = factory.newDocumentBuilder();
-		} catch (ParserConfigurationException e) {
-			throw new SvgGdiException(e);
-		}
-
+		DOMImplementation dom = builder.getDOMImplementation();
+		doc = dom.createDocument("http://www.w3.org/2000/svg", "svg", null);
+	}
+	
+	/**
+	 * Clears the drawing, so that this instance can convert the next file.
+	 * The configuration, the flags, the image cache and the image executor
+	 * are kept, and the output must be set again for the streaming mode. The
+	 * spool of an unfinished streaming output is discarded.
+	 */
+	public void reset() {
 		DOMImplementation dom = builder.getDOMImplementation();
 		doc = dom.createDocument("http://www.w3.org/2000/svg", "svg", null);
 		
-		InputStream in = null;
-		try {
-			in = getClass().getResourceAsStream("SvgGdi.properties");
-			props.load(in);
-		} catch (Exception e) {
-			throw new SvgGdiException("properties format error: SvgGDI.properties");
-		} finally {
-			try {
-				if (in != null) in.close();
-			} catch (IOException e) {
-				// no handle
-			}
+		dc = null;
+		saveDC.clear();
+		parentNode = null;
+		styleNode = null;
+		defsNode = null;
+		if (writer != null) {
+			writer.abort();
+			writer = null;
 		}
+		
+		brushNo = 0;
+		fontNo = 0;
+		penNo = 0;
+		patternNo = 0;
+		rgnNo = 0;
+		clipPathNo = 0;
+		imageNo = 0;
+		symbolNo = 0;
+		
+		nameMap.clear();
+		imageMap.clear();
+		symbolMap.clear();
+		patternMap.clear();
+		clipMap.clear();
+		groupClip = null;
+		buffer.setLength(0);
+		pathBuffer.setLength(0);
+		
+		defaultBrush = null;
+		defaultPen = null;
+		defaultFont = null;
+		ended = false;
+	}
+	
+	public SvgGdiConfig getConfig() {
+		return config;
 	}
 	
 	public void setCompatible(boolean flag) {
@@ -124,16 +214,88 @@ public class SvgGdi implements Gdi {
 	public boolean isReplaceSymbolFont() {
 		return replaceSymbolFont;
 	}
+	
+	/**
+	 * Sets the cache of PNG images converted from bitmaps. The cache can be
+	 * shared by the instances on other threads, so that a bitmap that appears
+	 * in many metafiles is converted only once.
+	 * 
+	 * @param cache the cache, or null not to use a cache.
+	 */
+	public void setImageCache(ImageCache cache) {
+		imageCache = cache;
+	}
+	
+	public ImageCache getImageCache() {
+		return imageCache;
+	}
+	
+	/**
+	 * Sets the executor that converts bitmaps to PNG images. When it is set,
+	 * the bitmaps are converted in parallel with the drawing, and the images
+	 * are waited for when the document is written by footer(). Each bitmap is
+	 * copied before it is passed to the executor.
+	 * 
+	 * @param executor the executor, or null to convert the bitmaps on the
+	 *        calling thread.
+	 */
+	public void setImageExecutor(Executor executor) {
+		imageExecutor = executor;
+	}
+	
+	public Executor getImageExecutor() {
+		return imageExecutor;
+	}
+	
+	/**
+	 * Writes the SVG document to the specified stream while drawing instead of
+	 * building the whole document in memory. Drawn elements are spooled as they
+	 * arrive, and the document is completed by {@link #footer()}. In this mode
+	 * {@link #getDocument()} only holds the root element, &lt;defs&gt; and &lt;style&gt;.
+	 * 
+	 * This method must be called before the header. The stream is not closed.
+	 * The write errors of the stream are thrown by the drawing methods and
+	 * footer() as {@link UncheckedSvgGdiException} that wraps a SvgGdiException.
+	 * 
+	 * @exception SvgGdiException if the spool file cannot be created.
+	 */
+	public void setOutput(OutputStream out) throws SvgGdiException {
+		if (parentNode != null) {
+			throw new IllegalStateException("output must be set before the header.");
+		}
+		if (writer != null) {
+			writer.abort();
+			writer = null;
+		}
+		try {
+			writer = new SvgWriter(out);
+		} catch (IOException e) {
+			throw new SvgGdiException(e);
+		}
+	}
 
 	public SvgDc getDC() {
 		return dc;
 	}
 
 	public String getProperty(String key) {
-		return props.getProperty(key);
+		return config.getProperty(key);
 	}
 
+	/**
+	 * Returns the document. The lines that are still merged into a path are
+	 * written first, so that a metafile that ends without footer() keeps them.
+	 */
 	public Document getDocument() {
+		flushPath();
+		return doc;
+	}
+	
+	/**
+	 * Returns the document to create the nodes, without writing the pending
+	 * path.
+	 */
+	Document getOwnerDocument() {
 		return doc;
 	}
 	
@@ -144,6 +306,14 @@ public class SvgGdi implements Gdi {
 	public Element getStyleElement() {
 		return styleNode;
 	}
+	
+	/**
+	 * Returns true if the document has been completed by footer(). A
+	 * metafile that is truncated ends without footer().
+	 */
+	public boolean isEnded() {
+		return ended;
+	}
 
 	public void placeableHeader(int wsx, int wsy, int wex, int wey, int dpi) {
 		if (parentNode == null) {
@@ -180,8 +350,7 @@ public class SvgGdi implements Gdi {
 		styleNode.setAttribute("type", "text/css");
 		root.appendChild(styleNode);
 		
-		parentNode = doc.createElement("g");
-		doc.getDocumentElement().appendChild(parentNode);
+		startGroup(doc.createElement("g"));
 
 		defaultBrush = (SvgBrush) createBrushIndirect(GdiBrush.BS_SOLID,
 				0x00FFFFFF, 0);
@@ -213,15 +382,15 @@ public class SvgGdi implements Gdi {
 		if (sxa == exa && sya == eya) {
 			if (rx == ry) {
 				elem = doc.createElement("circle");
-				elem.setAttribute("cx", "" + dc.toAbsoluteX(cx));
-				elem.setAttribute("cy", "" + dc.toAbsoluteY(cy));
-				elem.setAttribute("r", "" + dc.toRelativeX(rx));
+				elem.setAttribute("cx", buffer.format(dc.toAbsoluteX(cx)));
+				elem.setAttribute("cy", buffer.format(dc.toAbsoluteY(cy)));
+				elem.setAttribute("r", buffer.format(dc.toRelativeX(rx)));
 			} else {
 				elem = doc.createElement("ellipse");
-				elem.setAttribute("cx", "" + dc.toAbsoluteX(cx));
-				elem.setAttribute("cy", "" + dc.toAbsoluteY(cy));
-				elem.setAttribute("rx", "" + dc.toRelativeX(rx));
-				elem.setAttribute("ry", "" + dc.toRelativeY(ry));
+				elem.setAttribute("cx", buffer.format(dc.toAbsoluteX(cx)));
+				elem.setAttribute("cy", buffer.format(dc.toAbsoluteY(cy)));
+				elem.setAttribute("rx", buffer.format(dc.toRelativeX(rx)));
+				elem.setAttribute("ry", buffer.format(dc.toRelativeY(ry)));
 			}
 		} else {
 			double sa = Math.atan2((sya - cy) * rx, (sxa - cx) * ry);
@@ -235,21 +404,35 @@ public class SvgGdi implements Gdi {
 			double a = Math.atan2((ex-sx) * (-sy) - (ey-sy) * (-sx), (ex-sx) * (-sx) + (ey-sy) * (-sy));
 			
 			elem = doc.createElement("path");
-			elem.setAttribute("d", "M " + dc.toAbsoluteX(sx + cx) + "," + dc.toAbsoluteY(sy + cy)
-					+ " A " + dc.toRelativeX(rx)  + "," + dc.toRelativeY(ry)
-					+ " 0 " + (a > 0 ? "1" : "0") + " 0"
-					+ " " + dc.toAbsoluteX(ex + cx) + "," + dc.toAbsoluteY(ey + cy));
+			buffer.setLength(0);
+			buffer.append("M ").append(dc.toAbsoluteX(sx + cx)).append(',').append(dc.toAbsoluteY(sy + cy));
+			appendArc(rx, ry, a, ex + cx, ey + cy);
+			elem.setAttribute("d", buffer.toString());
 		}
 		
 		if (dc.getPen() != null) {
 			elem.setAttribute("class", getClassString(dc.getPen()));
 		}
 		elem.setAttribute("fill", "none");
-		parentNode.appendChild(elem);
+		appendChild(elem, sxr, syr, exr, eyr);
+	}
+
+	/**
+	 * Appends an arc command to the end point in the logical coordinates.
+	 */
+	private void appendArc(double rx, double ry, double a, double ex, double ey) {
+		buffer.append(" A ").append(dc.toRelativeX(rx)).append(',').append(dc.toRelativeY(ry));
+		buffer.append(" 0 ").append(a > 0 ? '1' : '0').append(" 0 ");
+		buffer.append(dc.toAbsoluteX(ex)).append(',').append(dc.toAbsoluteY(ey));
 	}
 
 	public void bitBlt(byte[] image, int dx, int dy, int dw, int dh, 
 			int sx, int sy, long rop) {
+		bitBlt(new Dib(image), dx, dy, dw, dh, sx, sy, rop);
+	}
+
+	public void bitBlt(Dib image, int dx, int dy, int dw, int dh,
+			int sx, int sy, long rop) {
 		bmpToSvg(image, dx, dy, dw, dh, sx, sy, dw, dh, Gdi.DIB_RGB_COLORS, rop);
 	}
 
@@ -266,15 +449,15 @@ public class SvgGdi implements Gdi {
 		if (sxa == exa && sya == eya) {
 			if (rx == ry) {
 				elem = doc.createElement("circle");
-				elem.setAttribute("cx", "" + dc.toAbsoluteX(cx));
-				elem.setAttribute("cy", "" + dc.toAbsoluteY(cy));
-				elem.setAttribute("r", "" + dc.toRelativeX(rx));
+				elem.setAttribute("cx", buffer.format(dc.toAbsoluteX(cx)));
+				elem.setAttribute("cy", buffer.format(dc.toAbsoluteY(cy)));
+				elem.setAttribute("r", buffer.format(dc.toRelativeX(rx)));
 			} else {
 				elem = doc.createElement("ellipse");
-				elem.setAttribute("cx", "" + dc.toAbsoluteX(cx));
-				elem.setAttribute("cy", "" + dc.toAbsoluteY(cy));
-				elem.setAttribute("rx", "" + dc.toRelativeX(rx));
-				elem.setAttribute("ry", "" + dc.toRelativeY(ry));
+				elem.setAttribute("cx", buffer.format(dc.toAbsoluteX(cx)));
+				elem.setAttribute("cy", buffer.format(dc.toAbsoluteY(cy)));
+				elem.setAttribute("rx", buffer.format(dc.toRelativeX(rx)));
+				elem.setAttribute("ry", buffer.format(dc.toRelativeY(ry)));
 			}
 		} else {
 			double sa = Math.atan2((sya - cy) * rx, (sxa - cx) * ry);
@@ -288,23 +471,22 @@ public class SvgGdi implements Gdi {
 			double a = Math.atan2((ex-sx) * (-sy) - (ey-sy) * (-sx), (ex-sx) * (-sx) + (ey-sy) * (-sy));
 			
 			elem = doc.createElement("path");
-			elem.setAttribute("d", "M " + dc.toAbsoluteX(sx + cx) + "," + dc.toAbsoluteY(sy + cy)
-					+ " A " + dc.toRelativeX(rx)  + "," + dc.toRelativeY(ry)
-					+ " 0 " + (a > 0 ? "1" : "0") + " 0"
-					+ " " + dc.toAbsoluteX(ex + cx) + "," + dc.toAbsoluteY(ey + cy) + " z");
+			buffer.setLength(0);
+			buffer.append("M ").append(dc.toAbsoluteX(sx + cx)).append(',').append(dc.toAbsoluteY(sy + cy));
+			appendArc(rx, ry, a, ex + cx, ey + cy);
+			buffer.append(" z");
+			elem.setAttribute("d", buffer.toString());
 		}
 
 		if (dc.getPen() != null || dc.getBrush() != null) {
 			elem.setAttribute("class", getClassString(dc.getPen(), dc.getBrush()));
 			if (dc.getBrush() != null
 					&& dc.getBrush().getStyle() == GdiBrush.BS_HATCHED) {
-				String id = "pattern" + (patternNo++);
-				elem.setAttribute("fill", "url(#" + id + ")");
-				defsNode.appendChild(dc.getBrush().createFillPattern(id));
+				elem.setAttribute("fill", "url(#" + getPatternID(dc.getBrush()) + ")");
 			}
 		}
 
-		parentNode.appendChild(elem);
+		appendChild(elem, sxr, syr, exr, eyr);
 	}
 
 	public GdiBrush createBrushIndirect(int style, int color, int hatch) {
@@ -374,6 +556,11 @@ public class SvgGdi implements Gdi {
 		bitBlt(image, dx, dy, dw, dh, sx, sy, rop);
 	}
 
+	public void dibBitBlt(Dib image, int dx, int dy, int dw, int dh,
+			int sx, int sy, long rop) {
+		bitBlt(image, dx, dy, dw, dh, sx, sy, rop);
+	}
+
 	public GdiPatternBrush dibCreatePatternBrush(byte[] image, int usage) {
 		// TODO usage
 		return new SvgPatternBrush(this, image);
@@ -385,6 +572,11 @@ public class SvgGdi implements Gdi {
     	this.stretchDIBits(dx, dy, dw, dh, sx, sy, sw, sh, image, Gdi.DIB_RGB_COLORS, rop);
     }
 
+	public void dibStretchBlt(Dib image, int dx, int dy, int dw, int dh,
+			int sx, int sy, int sw, int sh, long rop) {
+		stretchDIBits(dx, dy, dw, dh, sx, sy, sw, sh, image, Gdi.DIB_RGB_COLORS, rop);
+	}
+
 	public void ellipse(int sx, int sy, int ex, int ey) {
 		Element elem = doc.createElement("ellipse");
 
@@ -393,44 +585,32 @@ public class SvgGdi implements Gdi {
 					.getBrush()));
 			if (dc.getBrush() != null
 					&& dc.getBrush().getStyle() == GdiBrush.BS_HATCHED) {
-				String id = "pattern" + (patternNo++);
-				elem.setAttribute("fill", "url(#" + id + ")");
-				defsNode.appendChild(dc.getBrush().createFillPattern(id));
+				elem.setAttribute("fill", "url(#" + getPatternID(dc.getBrush()) + ")");
 			}
 		}
 
-		elem.setAttribute("cx", "" + (int)dc.toAbsoluteX((sx + ex) / 2));
-		elem.setAttribute("cy", "" + (int)dc.toAbsoluteY((sy + ey) / 2));
-		elem.setAttribute("rx", "" + (int)dc.toRelativeX((ex - sx) / 2));
-		elem.setAttribute("ry", "" + (int)dc.toRelativeY((ey - sy) / 2));
-		parentNode.appendChild(elem);
+		elem.setAttribute("cx", buffer.format((int)dc.toAbsoluteX((sx + ex) / 2)));
+		elem.setAttribute("cy", buffer.format((int)dc.toAbsoluteY((sy + ey) / 2)));
+		elem.setAttribute("rx", buffer.format((int)dc.toRelativeX((ex - sx) / 2)));
+		elem.setAttribute("ry", buffer.format((int)dc.toRelativeY((ey - sy) / 2)));
+		appendChild(elem, sx, sy, ex, ey);
 	}
 
 	public void escape(byte[] data) {
 	}
 
 	public int excludeClipRect(int left, int top, int right, int bottom) {
-		Element mask = dc.getMask();
-		if (mask != null) {
-			mask = (Element)mask.cloneNode(true);
-			String name = "mask" + (maskNo++);
-			mask.setAttribute("id", name);
-			defsNode.appendChild(mask);
-			
-			Element unclip = doc.createElement("rect");
-			unclip.setAttribute("x", "" + (int)dc.toAbsoluteX(left));
-			unclip.setAttribute("y", "" + (int)dc.toAbsoluteY(top));
-			unclip.setAttribute("width", "" + (int)dc.toRelativeX(right - left));
-			unclip.setAttribute("height", "" + (int)dc.toRelativeY(bottom - top));
-			unclip.setAttribute("fill", "black");
-			mask.appendChild(unclip);
-			dc.setMask(mask);
-			
-			// TODO
-			return GdiRegion.COMPLEXREGION;
-		} else {
-			return GdiRegion.NULLREGION;
+		flushPath();
+		
+		// the clip path is made when something is drawn next, so that
+		// successive exclusions make only one clip path.
+		Region clip = dc.getClipRegion();
+		if (clip == null) {
+			clip = getDeviceRegion();
 		}
+		clip = clip.subtract(toRegion(left, top, right, bottom));
+		dc.setClipRegion(clip);
+		return clip.getType();
 	}
 
 	public void extFloodFill(int x, int y, int color, int type) {
@@ -441,6 +621,9 @@ public class SvgGdi implements Gdi {
 	public void extTextOut(int x, int y, int options, int[] rect, byte[] text, int[] dx) {
 		Element elem = doc.createElement("text");
 
+		// the widths of the double byte characters are merged by the decoded text.
+		String str = decoder.decode(text, (dc.getFont() != null) ? dc.getFont().getCharset() : GdiFont.DEFAULT_CHARSET);
+
 		int escapement = 0;
 		boolean vertical = false;
 		if (dc.getFont() != null) {
@@ -506,7 +689,7 @@ public class SvgGdi implements Gdi {
 			if (dc.getFont() != null) width = Math.abs(dc.getFont().getFontSize());
 		} else {
 			if (dc.getFont() != null) {
-				dx = dc.getFont().validateDx(text, dx);
+				dx = decoder.toCharDx(dx);
 			}
 			
 			if (dx != null && dx.length > 0) {
@@ -543,7 +726,7 @@ public class SvgGdi implements Gdi {
 		int height = 0;
 		if (vertical) {
 			if (dc.getFont() != null) {
-				dx = dc.getFont().validateDx(text, dx);
+				dx = decoder.toCharDx(dx);
 			}
 			
 			buffer.setLength(0);
@@ -661,13 +844,6 @@ public class SvgGdi implements Gdi {
 			elem.setAttribute("clip-path", "url(#" + name + ")");
 		}
 		
-		String str = null;
-		if (dc.getFont() != null) {
-			str = GdiUtils.convertString(text, dc.getFont().getCharset());
-		} else {
-			str = GdiUtils.convertString(text, GdiFont.DEFAULT_CHARSET);
-		}
-
 		if (dc.getFont() != null && dc.getFont().getLang() != null) {
 			elem.setAttribute("xml:lang", dc.getFont().getLang());
 		}
@@ -686,7 +862,7 @@ public class SvgGdi implements Gdi {
 		if (escapement != 0)  {
 			elem.setAttribute("transform", "rotate(" + (-escapement/10.0) + ", " + ax + ", " + ay + ")");
 		}
-		parentNode.appendChild(elem);
+		appendChild(elem);
 	}
 
 	public void fillRgn(GdiRegion rgn, GdiBrush brush) {
@@ -697,11 +873,9 @@ public class SvgGdi implements Gdi {
 		elem.setAttribute("class", getClassString(brush));
 		SvgBrush sbrush = (SvgBrush)brush;
 		if(sbrush.getStyle() == GdiBrush.BS_HATCHED) {
-			String id = "pattern" + (patternNo++);
-			elem.setAttribute("fill", "url(#" + id + ")");
-			defsNode.appendChild(sbrush.createFillPattern(id));
+			elem.setAttribute("fill", "url(#" + getPatternID(sbrush) + ")");
 		}
-		parentNode.appendChild(elem);
+		appendChild(elem);
 	}
 
 	public void floodFill(int x, int y, int color) {
@@ -715,8 +889,13 @@ public class SvgGdi implements Gdi {
 	}
 
 	public void intersectClipRect(int left, int top, int right, int bottom) {
-		// TODO
-		log.fine("not implemented: intersectClipRect");
+		flushPath();
+		
+		Region clip = toRegion(left, top, right, bottom);
+		if (dc.getClipRegion() != null) {
+			clip = dc.getClipRegion().intersect(clip);
+		}
+		dc.setClipRegion(clip);
 	}
 
 	public void invertRgn(GdiRegion rgn) {
@@ -728,22 +907,35 @@ public class SvgGdi implements Gdi {
 		if (ropFilter != null) {
 			elem.setAttribute("filter", ropFilter);
 		}
-		parentNode.appendChild(elem);
+		appendChild(elem);
 	}
 
 	public void lineTo(int ex, int ey) {
-		Element elem = doc.createElement("line");
-		if (dc.getPen() != null) {
-			elem.setAttribute("class", getClassString(dc.getPen()));
+		// the lines are merged into one path until the pen or the clip is
+		// changed, or something else is drawn.
+		int x1 = (int)dc.toAbsoluteX(dc.getCurrentX());
+		int y1 = (int)dc.toAbsoluteY(dc.getCurrentY());
+		int x2 = (int)dc.toAbsoluteX(ex);
+		int y2 = (int)dc.toAbsoluteY(ey);
+		
+		if (pathBuffer.length() == 0) {
+			pathLeft = pathRight = x1;
+			pathTop = pathBottom = y1;
 		}
-
-		elem.setAttribute("fill", "none");
-
-		elem.setAttribute("x1", "" + (int)dc.toAbsoluteX(dc.getCurrentX()));
-		elem.setAttribute("y1", "" + (int)dc.toAbsoluteY(dc.getCurrentY()));
-		elem.setAttribute("x2", "" + (int)dc.toAbsoluteX(ex));
-		elem.setAttribute("y2", "" + (int)dc.toAbsoluteY(ey));
-		parentNode.appendChild(elem);
+		if (pathBuffer.length() == 0 || x1 != pathX || y1 != pathY) {
+			if (pathBuffer.length() != 0) {
+				pathBuffer.append(" ");
+			}
+			pathBuffer.append("M ").append(x1).append(",").append(y1);
+		}
+		pathBuffer.append(" L ").append(x2).append(",").append(y2);
+		
+		pathX = x2;
+		pathY = y2;
+		pathLeft = Math.min(pathLeft, Math.min(x1, x2));
+		pathTop = Math.min(pathTop, Math.min(y1, y2));
+		pathRight = Math.max(pathRight, Math.max(x1, x2));
+		pathBottom = Math.max(pathBottom, Math.max(y1, y2));
 
 		dc.moveToEx(ex, ey, null);
 	}
@@ -753,25 +945,11 @@ public class SvgGdi implements Gdi {
 	}
 
 	public void offsetClipRgn(int x, int y) {
+		flushPath();
 		dc.offsetClipRgn(x, y);
-		Element mask = dc.getMask();
-		if (mask != null) {
-			mask = (Element)mask.cloneNode(true);
-			String name = "mask" + (maskNo++);
-			mask.setAttribute("id", name);
-			if (dc.getOffsetClipX() != 0 || dc.getOffsetClipY() != 0) {
-				mask.setAttribute("transform", "translate(" + dc.getOffsetClipX() + "," + dc.getOffsetClipY() + ")");
-			}
-			defsNode.appendChild(mask);
-			
-			if (!parentNode.hasChildNodes()) {
-				doc.getDocumentElement().removeChild(parentNode);
-			}
-			parentNode = doc.createElement("g");
-			parentNode.setAttribute("mask", name);
-			doc.getDocumentElement().appendChild(parentNode);
-			
-			dc.setMask(mask);
+		Region clip = dc.getClipRegion();
+		if (clip != null) {
+			dc.setClipRegion(clip.offset((int)dc.toRelativeX(x), (int)dc.toRelativeY(y)));
 		}
 	}
 
@@ -805,15 +983,15 @@ public class SvgGdi implements Gdi {
 		if (sxa == exa && sya == eya) {
 			if (rx == ry) {
 				elem = doc.createElement("circle");
-				elem.setAttribute("cx", "" + dc.toAbsoluteX(cx));
-				elem.setAttribute("cy", "" + dc.toAbsoluteY(cy));
-				elem.setAttribute("r", "" + dc.toRelativeX(rx));
+				elem.setAttribute("cx", buffer.format(dc.toAbsoluteX(cx)));
+				elem.setAttribute("cy", buffer.format(dc.toAbsoluteY(cy)));
+				elem.setAttribute("r", buffer.format(dc.toRelativeX(rx)));
 			} else {
 				elem = doc.createElement("ellipse");
-				elem.setAttribute("cx", "" + dc.toAbsoluteX(cx));
-				elem.setAttribute("cy", "" + dc.toAbsoluteY(cy));
-				elem.setAttribute("rx", "" + dc.toRelativeX(rx));
-				elem.setAttribute("ry", "" + dc.toRelativeY(ry));
+				elem.setAttribute("cx", buffer.format(dc.toAbsoluteX(cx)));
+				elem.setAttribute("cy", buffer.format(dc.toAbsoluteY(cy)));
+				elem.setAttribute("rx", buffer.format(dc.toRelativeX(rx)));
+				elem.setAttribute("ry", buffer.format(dc.toRelativeY(ry)));
 			}
 		} else {
 			double sa = Math.atan2((sya - cy) * rx, (sxa - cx) * ry);
@@ -827,11 +1005,12 @@ public class SvgGdi implements Gdi {
 			double a = Math.atan2((ex-sx) * (-sy) - (ey-sy) * (-sx), (ex-sx) * (-sx) + (ey-sy) * (-sy));
 			
 			elem = doc.createElement("path");
-			elem.setAttribute("d", "M " + dc.toAbsoluteX(sx + cx) + "," + dc.toAbsoluteY(sy + cy)
-					+ " L " + dc.toAbsoluteX(sx + cx) + "," + dc.toAbsoluteY(sy + cy)
-					+ " A " + dc.toRelativeX(rx)  + "," + dc.toRelativeY(ry)
-					+ " 0 " + (a > 0 ? "1" : "0") + " 0"
-					+ " " + dc.toAbsoluteX(ex + cx) + "," + dc.toAbsoluteY(ey + cy) + " z");
+			buffer.setLength(0);
+			buffer.append("M ").append(dc.toAbsoluteX(sx + cx)).append(',').append(dc.toAbsoluteY(sy + cy));
+			buffer.append(" L ").append(dc.toAbsoluteX(sx + cx)).append(',').append(dc.toAbsoluteY(sy + cy));
+			appendArc(rx, ry, a, ex + cx, ey + cy);
+			buffer.append(" z");
+			elem.setAttribute("d", buffer.toString());
 		}
 
 		if (dc.getPen() != null || dc.getBrush() != null) {
@@ -839,15 +1018,17 @@ public class SvgGdi implements Gdi {
 					.getBrush()));
 			if (dc.getBrush() != null
 					&& dc.getBrush().getStyle() == GdiBrush.BS_HATCHED) {
-				String id = "pattern" + (patternNo++);
-				elem.setAttribute("fill", "url(#" + id + ")");
-				defsNode.appendChild(dc.getBrush().createFillPattern(id));
+				elem.setAttribute("fill", "url(#" + getPatternID(dc.getBrush()) + ")");
 			}
 		}
-		parentNode.appendChild(elem);
+		appendChild(elem, sxr, syr, exr, eyr);
 	}
 
 	public void polygon(Point[] points) {
+		polygon(GdiUtils.toArray(points), points.length);
+	}
+
+	public void polygon(int[] points, int count) {
 		Element elem = doc.createElement("polygon");
 
 		if (dc.getPen() != null || dc.getBrush() != null) {
@@ -855,46 +1036,66 @@ public class SvgGdi implements Gdi {
 					.getBrush()));
 			if (dc.getBrush() != null
 					&& dc.getBrush().getStyle() == GdiBrush.BS_HATCHED) {
-				String id = "pattern" + (patternNo++);
-				elem.setAttribute("fill", "url(#" + id + ")");
-				defsNode.appendChild(dc.getBrush().createFillPattern(id));
+				elem.setAttribute("fill", "url(#" + getPatternID(dc.getBrush()) + ")");
 			}
 			if (dc.getPolyFillMode() == WINDING) {
 				elem.setAttribute("fill-rule", "nonzero");
 			}
 		}
 
+		int[] apoints = toAbsolute(points, count);
 		buffer.setLength(0);
-		for (int i = 0; i < points.length; i++) {
+		for (int i = 0; i < count * 2; i += 2) {
 			if (i != 0) {
-				buffer.append(" ");
+				buffer.append(' ');
 			}
-			buffer.append((int)dc.toAbsoluteX(points[i].x)).append(",");
-			buffer.append((int)dc.toAbsoluteY(points[i].y));
+			buffer.append(apoints[i]).append(',').append(apoints[i + 1]);
 		}
 		elem.setAttribute("points", buffer.toString());
-		parentNode.appendChild(elem);
+		appendChild(elem, points, count);
 	}
 
 	public void polyline(Point[] points) {
+		polyline(GdiUtils.toArray(points), points.length);
+	}
+
+	public void polyline(int[] points, int count) {
 		Element elem = doc.createElement("polyline");
 		if (dc.getPen() != null) {
 			elem.setAttribute("class", getClassString(dc.getPen()));
 		}
 		elem.setAttribute("fill", "none");
 
+		int[] apoints = toAbsolute(points, count);
 		buffer.setLength(0);
-		for (int i = 0; i < points.length; i++) {
+		for (int i = 0; i < count * 2; i += 2) {
 			if (i != 0)
-				buffer.append(" ");
-			buffer.append((int)dc.toAbsoluteX(points[i].x)).append(",");
-			buffer.append((int)dc.toAbsoluteY(points[i].y));
+				buffer.append(' ');
+			buffer.append(apoints[i]).append(',').append(apoints[i + 1]);
 		}
 		elem.setAttribute("points", buffer.toString());
-		parentNode.appendChild(elem);
+		appendChild(elem, points, count);
 	}
 
 	public void polyPolygon(Point[][] points) {
+		int[] counts = new int[points.length];
+		int total = 0;
+		for (int i = 0; i < points.length; i++) {
+			counts[i] = points[i].length;
+			total += counts[i];
+		}
+		int[] array = new int[total * 2];
+		int pos = 0;
+		for (int i = 0; i < points.length; i++) {
+			for (int j = 0; j < points[i].length; j++) {
+				array[pos++] = points[i][j].x;
+				array[pos++] = points[i][j].y;
+			}
+		}
+		polyPolygon(array, counts, points.length);
+	}
+
+	public void polyPolygon(int[] points, int[] counts, int polygons) {
 		Element elem = doc.createElement("path");
 
 		if (dc.getPen() != null || dc.getBrush() != null) {
@@ -902,35 +1103,40 @@ public class SvgGdi implements Gdi {
 					.getBrush()));
 			if (dc.getBrush() != null
 					&& dc.getBrush().getStyle() == GdiBrush.BS_HATCHED) {
-				String id = "pattern" + (patternNo++);
-				elem.setAttribute("fill", "url(#" + id + ")");
-				defsNode.appendChild(dc.getBrush().createFillPattern(id));
+				elem.setAttribute("fill", "url(#" + getPatternID(dc.getBrush()) + ")");
 			}
 			if (dc.getPolyFillMode() == WINDING) {
 				elem.setAttribute("fill-rule", "nonzero");
 			}
 		}
 
+		int total = 0;
+		for (int i = 0; i < polygons; i++) {
+			total += counts[i];
+		}
+		int[] apoints = toAbsolute(points, total);
+		
 		buffer.setLength(0);
-		for (int i = 0; i < points.length; i++) {
+		int pos = 0;
+		for (int i = 0; i < polygons; i++) {
 			if (i != 0) {
 				buffer.append(" ");
 			}
-			for (int j = 0; j < points[i].length; j++) {
+			for (int j = 0; j < counts[i]; j++) {
 				if (j == 0) {
 					buffer.append("M ");
 				} else if (j == 1) {
 					buffer.append(" L ");
 				}
-				buffer.append((int)dc.toAbsoluteX(points[i][j].x)).append(",");
-				buffer.append((int)dc.toAbsoluteY(points[i][j].y)).append(" ");
-				if (j == points[i].length - 1) {
+				buffer.append(apoints[pos * 2]).append(',').append(apoints[pos * 2 + 1]).append(' ');
+				if (j == counts[i] - 1) {
 					buffer.append("z");
 				}
+				pos++;
 			}
 		}
 		elem.setAttribute("d", buffer.toString());
-		parentNode.appendChild(elem);
+		appendChild(elem, points, pos);
 	}
 
 	public void realizePalette() {
@@ -939,20 +1145,12 @@ public class SvgGdi implements Gdi {
 	}
 
 	public void restoreDC(int savedDC) {
+		flushPath();
+		
 		int limit = (savedDC < 0) ? -savedDC : saveDC.size()-savedDC;
 		for (int i = 0; i < limit; i++) {
 			dc = (SvgDc)saveDC.removeLast();
 		}
-		
-		if (!parentNode.hasChildNodes()) {
-			doc.getDocumentElement().removeChild(parentNode);
-		}
-		parentNode = doc.createElement("g");
-		Element mask = dc.getMask();
-		if (mask != null) {
-			parentNode.setAttribute("mask", "url(#" + mask.getAttribute("id") + ")");
-		}
-		doc.getDocumentElement().appendChild(parentNode);
 	}
 
 	public void rectangle(int sx, int sy, int ex, int ey) {
@@ -963,17 +1161,15 @@ public class SvgGdi implements Gdi {
 					.getBrush()));
 			if (dc.getBrush() != null
 					&& dc.getBrush().getStyle() == GdiBrush.BS_HATCHED) {
-				String id = "pattern" + (patternNo++);
-				elem.setAttribute("fill", "url(#" + id + ")");
-				defsNode.appendChild(dc.getBrush().createFillPattern(id));
+				elem.setAttribute("fill", "url(#" + getPatternID(dc.getBrush()) + ")");
 			}
 		}
 
-		elem.setAttribute("x", "" + (int)dc.toAbsoluteX(sx));
-		elem.setAttribute("y", "" + (int)dc.toAbsoluteY(sy));
-		elem.setAttribute("width", "" + (int)dc.toRelativeX(ex - sx));
-		elem.setAttribute("height", "" + (int)dc.toRelativeY(ey - sy));
-		parentNode.appendChild(elem);
+		elem.setAttribute("x", buffer.format((int)dc.toAbsoluteX(sx)));
+		elem.setAttribute("y", buffer.format((int)dc.toAbsoluteY(sy)));
+		elem.setAttribute("width", buffer.format((int)dc.toRelativeX(ex - sx)));
+		elem.setAttribute("height", buffer.format((int)dc.toRelativeY(ey - sy)));
+		appendChild(elem, sx, sy, ex, ey);
 	}
 
 	public void resizePalette(GdiPalette palette) {
@@ -989,19 +1185,17 @@ public class SvgGdi implements Gdi {
 					.getBrush()));
 			if (dc.getBrush() != null
 					&& dc.getBrush().getStyle() == GdiBrush.BS_HATCHED) {
-				String id = "pattern" + (patternNo++);
-				elem.setAttribute("fill", "url(#" + id + ")");
-				defsNode.appendChild(dc.getBrush().createFillPattern(id));
+				elem.setAttribute("fill", "url(#" + getPatternID(dc.getBrush()) + ")");
 			}
 		}
 
-		elem.setAttribute("x", "" + (int)dc.toAbsoluteX(sx));
-		elem.setAttribute("y", "" + (int)dc.toAbsoluteY(sy));
-		elem.setAttribute("width", "" + (int)dc.toRelativeX(ex - sx));
-		elem.setAttribute("height", "" + (int)dc.toRelativeY(ey - sy));
-		elem.setAttribute("rx", "" + (int)dc.toRelativeX(rw));
-		elem.setAttribute("ry", "" + (int)dc.toRelativeY(rh));
-		parentNode.appendChild(elem);
+		elem.setAttribute("x", buffer.format((int)dc.toAbsoluteX(sx)));
+		elem.setAttribute("y", buffer.format((int)dc.toAbsoluteY(sy)));
+		elem.setAttribute("width", buffer.format((int)dc.toRelativeX(ex - sx)));
+		elem.setAttribute("height", buffer.format((int)dc.toRelativeY(ey - sy)));
+		elem.setAttribute("rx", buffer.format((int)dc.toRelativeX(rw)));
+		elem.setAttribute("ry", buffer.format((int)dc.toRelativeY(rh)));
+		appendChild(elem, sx, sy, ex, ey);
 	}
 
 	public void seveDC() {
@@ -1017,31 +1211,14 @@ public class SvgGdi implements Gdi {
 	}
 
 	public void selectClipRgn(GdiRegion rgn) {
-		if (!parentNode.hasChildNodes()) {
-			doc.getDocumentElement().removeChild(parentNode);
-		}
-		parentNode = doc.createElement("g");
+		flushPath();
 		
-		if (rgn != null) {
-			Element mask = doc.createElement("mask");
-			mask.setAttribute("id", "mask" + (maskNo++));
-			mask.setIdAttribute("id", true);
-			
-			if (dc.getOffsetClipX() != 0 || dc.getOffsetClipY() != 0) {
-				mask.setAttribute("transform", "translate(" + dc.getOffsetClipX() + "," + dc.getOffsetClipY() + ")");
-			}
-			defsNode.appendChild(mask);
-			
-			Element clip = doc.createElement("use");
-			clip.setAttribute("xlink:href", "url(#" + nameMap.get(rgn) + ")");
-			clip.setAttribute("fill", "white");
-			
-			mask.appendChild(clip);
-			
-			parentNode.setAttribute("mask", "url(#" + mask.getAttribute("id") + ")");
+		if (rgn instanceof SvgRectRegion) {
+			SvgRectRegion rrgn = (SvgRectRegion)rgn;
+			dc.setClipRegion(toRegion(rrgn.getLeft(), rrgn.getTop(), rrgn.getRight(), rrgn.getBottom()));
+		} else {
+			dc.setClipRegion(null);
 		}
-		
-		doc.getDocumentElement().appendChild(parentNode);
 	}
 
 	public void selectObject(GdiObject obj) {
@@ -1050,6 +1227,9 @@ public class SvgGdi implements Gdi {
 		} else if (obj instanceof SvgFont) {
 			dc.setFont((SvgFont) obj);
 		} else if (obj instanceof SvgPen) {
+			if (obj != dc.getPen()) {
+				flushPath();
+			}
 			dc.setPen((SvgPen) obj);
 		}
 	}
@@ -1071,6 +1251,11 @@ public class SvgGdi implements Gdi {
 			int sy, int startscan, int scanlines, byte[] image, int colorUse) {
 		stretchDIBits(dx, dy, dw, dh, sx, sy, dw, dh, image, colorUse, SRCCOPY);
 	}
+
+	public void setDIBitsToDevice(int dx, int dy, int dw, int dh, int sx,
+			int sy, int startscan, int scanlines, Dib image, int colorUse) {
+		stretchDIBits(dx, dy, dw, dh, sx, sy, dw, dh, image, colorUse, SRCCOPY);
+	}
 	
 	public void setLayout(long layout) {
 		dc.setLayout(layout);
@@ -1093,11 +1278,11 @@ public class SvgGdi implements Gdi {
 		Element elem = doc.createElement("rect");
 		elem.setAttribute("stroke", "none");
 		elem.setAttribute("fill", SvgPen.toColor(color));
-		elem.setAttribute("x", "" + (int)dc.toAbsoluteX(x));
-		elem.setAttribute("y", "" + (int)dc.toAbsoluteY(y));
-		elem.setAttribute("width", "" + (int)dc.toRelativeX(1));
-		elem.setAttribute("height", "" + (int)dc.toRelativeY(1));
-		parentNode.appendChild(elem);
+		elem.setAttribute("x", buffer.format((int)dc.toAbsoluteX(x)));
+		elem.setAttribute("y", buffer.format((int)dc.toAbsoluteY(y)));
+		elem.setAttribute("width", buffer.format((int)dc.toRelativeX(1)));
+		elem.setAttribute("height", buffer.format((int)dc.toRelativeY(1)));
+		appendChild(elem, x, y, x + 1, y + 1);
 	}
 
 	public void setPolyFillMode(int mode) {
@@ -1155,8 +1340,18 @@ public class SvgGdi implements Gdi {
 		dibStretchBlt(image, dx, dy, dw, dh, sx, sy, sw, sh, rop);
 	}
 
+	public void stretchBlt(Dib image, int dx, int dy, int dw, int dh, int sx, int sy,
+			int sw, int sh, long rop) {
+		dibStretchBlt(image, dx, dy, dw, dh, sx, sy, sw, sh, rop);
+	}
+
 	public void stretchDIBits(int dx, int dy, int dw, int dh, int sx, int sy,
 			int sw, int sh, byte[] image, int usage, long rop) {
+		stretchDIBits(dx, dy, dw, dh, sx, sy, sw, sh, new Dib(image), usage, rop);
+	}
+
+	public void stretchDIBits(int dx, int dy, int dw, int dh, int sx, int sy,
+			int sw, int sh, Dib image, int usage, long rop) {
 		bmpToSvg(image, dx, dy, dw, dh, sx, sy, sw, sh, usage, rop);
 	}
 	
@@ -1202,7 +1397,7 @@ public class SvgGdi implements Gdi {
 		}
 
 		if (dc.getTextSpace() > 0) {
-			buffer.append("word-spacing: " + dc.getTextSpace() + "; ");
+			buffer.append("word-spacing: ").append(dc.getTextSpace()).append("; ");
 		}
 		
 		if (buffer.length() > 0) {
@@ -1221,12 +1416,7 @@ public class SvgGdi implements Gdi {
 			elem.setAttribute("transform", "rotate(" + (-escapement/10.0) + ", " + ax + ", " + ay + ")");
 		}
 
-		String str = null;
-		if (dc.getFont() != null) {
-			str = GdiUtils.convertString(text, dc.getFont().getCharset());
-		} else {
-			str = GdiUtils.convertString(text, GdiFont.DEFAULT_CHARSET);
-		}
+		String str = decoder.decode(text, (dc.getFont() != null) ? dc.getFont().getCharset() : GdiFont.DEFAULT_CHARSET);
 
 		if (dc.getTextCharacterExtra() != 0) {
 			buffer.setLength(0);
@@ -1246,10 +1436,12 @@ public class SvgGdi implements Gdi {
 		}
 		elem.setAttribute("xml:space", "preserve");
 		appendText(elem, str);
-		parentNode.appendChild(elem);
+		appendChild(elem);
 	}
 
 	public void footer() {
+		flushPath();
+		
 		Element root = doc.getDocumentElement();
 		if (!root.hasAttribute("width") && dc.getWindowWidth() != 0) {
 			root.setAttribute("width", "" + Math.abs(dc.getWindowWidth()));
@@ -1270,9 +1462,276 @@ public class SvgGdi implements Gdi {
 			styleNode.insertBefore(doc.createTextNode("\n"), styleNode.getFirstChild());
 		}
 
+		if (imageExecutor != null) {
+			removeEmptyImages();
+		}
+		
 		if (!defsNode.hasChildNodes()) {
 			root.removeChild(defsNode);
 		}
+		
+		if (writer == null && imageExecutor != null) {
+			for (Iterator<Element> i = imageMap.values().iterator(); i.hasNext(); ) {
+				SvgWriter.resolveLazyAttribute(i.next(), "xlink:href");
+			}
+		}
+		
+		if (writer != null) {
+			try {
+				writer.close(root);
+			} catch (IOException e) {
+				throw new UncheckedSvgGdiException(new SvgGdiException(e));
+			}
+		}
+		ended = true;
+	}
+	
+	/**
+	 * Removes the images whose conversion failed on the image executor, as
+	 * the bitmaps are dropped when they are converted on the calling thread.
+	 * The symbols of the images are emptied, because the drawn elements may
+	 * have been written already.
+	 */
+	private void removeEmptyImages() {
+		Set<String> removed = new HashSet<String>();
+		for (Iterator<Element> i = imageMap.values().iterator(); i.hasNext(); ) {
+			Element image = i.next();
+			SvgDataUri href = SvgWriter.getLazyAttribute(image, "xlink:href");
+			if (href != null && href.isEmpty()) {
+				removed.add("#" + image.getAttribute("id"));
+				defsNode.removeChild(image);
+				i.remove();
+			}
+		}
+		if (removed.isEmpty()) {
+			return;
+		}
+		
+		NodeList symbols = defsNode.getElementsByTagName("symbol");
+		for (int i = 0; i < symbols.getLength(); i++) {
+			Element use = (Element)symbols.item(i).getFirstChild();
+			if (use != null && removed.contains(use.getAttribute("xlink:href"))) {
+				symbols.item(i).removeChild(use);
+			}
+		}
+	}
+	
+	private void startGroup(Element g) {
+		if (writer != null) {
+			try {
+				writer.startGroup(g);
+			} catch (IOException e) {
+				throw new UncheckedSvgGdiException(new SvgGdiException(e));
+			}
+		} else {
+			if (parentNode != null && !parentNode.hasChildNodes()) {
+				doc.getDocumentElement().removeChild(parentNode);
+			}
+			doc.getDocumentElement().appendChild(g);
+		}
+		parentNode = g;
+	}
+	
+	/**
+	 * Converts the points to the absolute coordinates. The result is valid
+	 * until the next call.
+	 */
+	private int[] toAbsolute(int[] points, int count) {
+		if (count * 2 > absolutePoints.length) {
+			absolutePoints = new int[Math.max(count * 2, absolutePoints.length * 2)];
+		}
+		dc.toAbsolute(points, count, absolutePoints);
+		return absolutePoints;
+	}
+	
+	/**
+	 * Returns the rectangle in the absolute coordinates as a region.
+	 */
+	private Region toRegion(int left, int top, int right, int bottom) {
+		int x = (int)dc.toAbsoluteX(left);
+		int y = (int)dc.toAbsoluteY(top);
+		return new Region(x, y, x + (int)dc.toRelativeX(right - left), y + (int)dc.toRelativeY(bottom - top));
+	}
+	
+	/**
+	 * Returns the region of the whole picture, that is the clip when no clip
+	 * region is selected.
+	 */
+	private Region getDeviceRegion() {
+		int width = Math.abs(dc.getWindowWidth());
+		int height = Math.abs(dc.getWindowHeight());
+		if (width == 0 || height == 0) {
+			return new Region(-0x1000000, -0x1000000, 0x1000000, 0x1000000);
+		}
+		return new Region(0, 0, width, height);
+	}
+	
+	/**
+	 * Appends a drawing whose bounds are the rectangle in the logical
+	 * coordinates. A drawing out of the clip is dropped, and a drawing in
+	 * the clip is appended without the clip path.
+	 */
+	private void appendChild(Element elem, int left, int top, int right, int bottom) {
+		if (dc.getClipRegion() == null) {
+			appendChild(elem);
+			return;
+		}
+		appendChildInBounds(elem, dc.toAbsoluteX(left), dc.toAbsoluteY(top),
+				dc.toAbsoluteX(right), dc.toAbsoluteY(bottom));
+	}
+	
+	/**
+	 * Appends a drawing whose bounds are the rectangle in the absolute
+	 * coordinates.
+	 */
+	private void appendChildInBounds(Element elem, double x1, double y1, double x2, double y2) {
+		flushPath();
+		Region clip = dc.getClipRegion();
+		if (clip == null) {
+			appendChild(elem);
+			return;
+		}
+		
+		// the bounds grow by the width of the pen and the rounding.
+		double margin = 1.0;
+		if (dc.getPen() != null && dc.getPen().getStyle() != GdiPen.PS_NULL) {
+			margin += Math.abs(dc.toRelativeX(dc.getPen().getWidth()));
+		}
+		int l = (int)Math.floor(Math.min(x1, x2) - margin);
+		int t = (int)Math.floor(Math.min(y1, y2) - margin);
+		int r = (int)Math.ceil(Math.max(x1, x2) + margin);
+		int b = (int)Math.ceil(Math.max(y1, y2) + margin);
+		
+		if (!clip.intersects(l, t, r, b)) {
+			return;
+		}
+		if (clip.contains(l, t, r, b)) {
+			if (groupClip != null && !groupClip.contains(l, t, r, b)) {
+				startGroup(doc.createElement("g"));
+				groupClip = null;
+			}
+			appendChild0(elem);
+			return;
+		}
+		appendChild(elem);
+	}
+	
+	private void appendChild(Element elem, int[] points, int count) {
+		if (dc.getClipRegion() == null || count == 0) {
+			appendChild(elem);
+			return;
+		}
+		
+		int left = points[0];
+		int top = points[1];
+		int right = points[0];
+		int bottom = points[1];
+		for (int i = 1; i < count; i++) {
+			left = Math.min(left, points[i * 2]);
+			top = Math.min(top, points[i * 2 + 1]);
+			right = Math.max(right, points[i * 2]);
+			bottom = Math.max(bottom, points[i * 2 + 1]);
+		}
+		appendChild(elem, left, top, right, bottom);
+	}
+	
+	/**
+	 * Appends a drawing under the current clip. A group with the clip path is
+	 * started when the clip has changed since the last drawing.
+	 */
+	private void appendChild(Element elem) {
+		flushPath();
+		Region clip = dc.getClipRegion();
+		if (clip != null && clip.isEmpty()) {
+			return;
+		}
+		
+		if (clip == null ? groupClip != null : !clip.equals(groupClip)) {
+			Element g = doc.createElement("g");
+			if (clip != null) {
+				g.setAttribute("clip-path", "url(#" + getClipPathID(clip) + ")");
+			}
+			startGroup(g);
+			groupClip = clip;
+		}
+		appendChild0(elem);
+	}
+	
+	/**
+	 * Returns the id of the clip path of a region. The same region shares
+	 * one clip path.
+	 */
+	private String getClipPathID(Region clip) {
+		String id = clipMap.get(clip);
+		if (id == null) {
+			id = "clipPath" + (clipPathNo++);
+			Element clipPath = doc.createElement("clipPath");
+			clipPath.setAttribute("id", id);
+			clipPath.setIdAttribute("id", true);
+			
+			int[] rects = clip.getRects();
+			for (int i = 0; i < rects.length; i += 4) {
+				Element rect = doc.createElement("rect");
+				rect.setAttribute("x", buffer.format(rects[i]));
+				rect.setAttribute("y", buffer.format(rects[i + 1]));
+				rect.setAttribute("width", buffer.format(rects[i + 2] - rects[i]));
+				rect.setAttribute("height", buffer.format(rects[i + 3] - rects[i + 1]));
+				clipPath.appendChild(rect);
+			}
+			defsNode.appendChild(clipPath);
+			clipMap.put(clip, id);
+		}
+		return id;
+	}
+	
+	/**
+	 * Appends the merged lines as a path.
+	 */
+	private void flushPath() {
+		if (pathBuffer.length() == 0) {
+			return;
+		}
+		
+		Element elem = doc.createElement("path");
+		if (dc.getPen() != null) {
+			elem.setAttribute("class", getClassString(dc.getPen()));
+		}
+		elem.setAttribute("fill", "none");
+		elem.setAttribute("d", pathBuffer.toString());
+		pathBuffer.setLength(0);
+		appendChildInBounds(elem, pathLeft, pathTop, pathRight, pathBottom);
+	}
+	
+	private void appendChild0(Element elem) {
+		if (writer != null) {
+			try {
+				writer.appendChild(elem);
+			} catch (IOException e) {
+				throw new UncheckedSvgGdiException(new SvgGdiException(e));
+			}
+		} else {
+			parentNode.appendChild(elem);
+		}
+	}
+
+	/**
+	 * Returns the id of the pattern of a hatched brush. The pattern depends on
+	 * the background and the scale too, so it is shared only when they are
+	 * the same.
+	 */
+	private String getPatternID(SvgBrush brush) {
+		boolean opaque = (dc.getBkMode() == Gdi.OPAQUE);
+		String key = brush.getHatch() + " " + brush.getColor()
+			+ " " + (opaque ? Integer.toString(dc.getBkColor()) : "-")
+			+ " " + dc.getDpi();
+		
+		String id = patternMap.get(key);
+		if (id == null) {
+			id = "pattern" + (patternNo++);
+			defsNode.appendChild(brush.createFillPattern(id));
+			patternMap.put(key, id);
+		}
+		return id;
 	}
 
 	private String getClassString(GdiObject obj1, GdiObject obj2) {
@@ -1515,18 +1974,73 @@ public class SvgGdi implements Gdi {
 		elem.appendChild(doc.createTextNode(str));		
 	}
 	
-	private void bmpToSvg(byte[] image, int dx, int dy, int dw, int dh, int sx, int sy,
+	/**
+	 * Draws a bitmap as a &lt;use&gt; of a symbol in defs. Each distinct
+	 * bitmap is encoded once into an &lt;image&gt; in defs, and each source
+	 * rectangle of it has a symbol that refers to the image. The viewBox of
+	 * the symbol crops the image to the source rectangle.
+	 */
+	private void bmpToSvg(Dib dib, int dx, int dy, int dw, int dh, int sx, int sy,
 			int sw, int sh, int usage, long rop) {
-		image = ImageUtil.convert(dibToBmp(image), "png", dh < 0);
-	
-		StringBuffer buffer = new StringBuffer("data:image/png;base64,");
-		buffer.append(Base64.encode(image));
-		String data = buffer.toString();
-		if (data == null || data.equals("")) {
+		boolean reverse = (dh < 0);
+		Element image = getImageElement(dib, reverse);
+		if (image == null) {
 			return;
 		}
+		
+		String preserveAspectRatio = null;
+		if (sx != 0 || sy != 0 || sw != dw || sh != dh) {
+			preserveAspectRatio = "none";
+		}
+		
+		// a negative source extent mirrors the bitmap as the destination does
+		if (sw < 0) {
+			sx += sw;
+			sw = -sw;
+			dx += dw;
+			dw = -dw;
+		}
+		if (sh < 0) {
+			sy += sh;
+			sh = -sh;
+			dy += dh;
+			dh = -dh;
+		}
+		
+		if (sw == 0 || sh == 0) {
+			return;
+		}
+		
+		// sy of a bottom-up bitmap is measured from the bottom row, and the
+		// image has the top row first unless it is reversed.
+		if (dib.isTopDown() == reverse) {
+			sy = dib.getHeight() - sy - sh;
+		}
+		
+		// the part of the source rectangle out of the bitmap is transparent.
+		buffer.setLength(0);
+		buffer.append(sx).append(' ').append(sy).append(' ').append(sw).append(' ').append(sh);
+		String viewBox = buffer.toString();
+		
+		String imageId = image.getAttribute("id");
+		String symbolKey = imageId + " " + viewBox + " " + preserveAspectRatio;
+		String symbolId = symbolMap.get(symbolKey);
+		if (symbolId == null) {
+			symbolId = "symbol" + (symbolNo++);
+			Element symbol = doc.createElement("symbol");
+			symbol.setAttribute("id", symbolId);
+			symbol.setAttribute("viewBox", viewBox);
+			if (preserveAspectRatio != null) {
+				symbol.setAttribute("preserveAspectRatio", preserveAspectRatio);
+			}
+			Element use = doc.createElement("use");
+			use.setAttribute("xlink:href", "#" + imageId);
+			symbol.appendChild(use);
+			defsNode.appendChild(symbol);
+			symbolMap.put(symbolKey, symbolId);
+		}
 
-		Element elem = doc.createElement("image");
+		Element elem = doc.createElement("use");
 		int x = (int)dc.toAbsoluteX(dx);
 		int y = (int)dc.toAbsoluteY(dy);
 		int width = (int)dc.toRelativeX(dw);
@@ -1539,29 +2053,107 @@ public class SvgGdi implements Gdi {
 		} else if (height < 0) {
 			elem.setAttribute("transform", "scale(1, -1) translate(" + x + ", " + -y + ")");
 		} else {
-			elem.setAttribute("x", "" + x);
-			elem.setAttribute("y", "" + y);			
+			elem.setAttribute("x", buffer.format(x));
+			elem.setAttribute("y", buffer.format(y));
 		}
 		
-		elem.setAttribute("width", "" + Math.abs(width));
-		elem.setAttribute("height", "" + Math.abs(height));
-
-		if (sx != 0 || sy != 0 || sw != dw || sh != dh) {
-			elem.setAttribute("viewBox", "" + sx + " " + sy + " " + sw + " "+ sh);
-			elem.setAttribute("preserveAspectRatio", "none");
-		}
+		elem.setAttribute("width", buffer.format(Math.abs(width)));
+		elem.setAttribute("height", buffer.format(Math.abs(height)));
 		
 		String ropFilter = dc.getRopFilter(rop);
 		if (ropFilter != null) {
 			elem.setAttribute("filter", ropFilter);
 		}
 		
-		elem.setAttribute("xlink:href", data);
-		parentNode.appendChild(elem);
+		elem.setAttribute("xlink:href", "#" + symbolId);
+		appendChild(elem, dx, dy, dx + dw, dy + dh);
+	}
+	
+	/**
+	 * Returns the image element in defs for the bitmap. The bitmap is
+	 * converted to PNG and added to defs if it has not been yet.
+	 */
+	private Element getImageElement(Dib dib, final boolean reverse) {
+		final String key = digest(dib) + (reverse ? "R" : "");
+		Element image = imageMap.get(key);
+		if (image != null) {
+			return image;
+		}
+		
+		SvgDataUri href;
+		if (imageExecutor != null) {
+			final Dib copy = new Dib(dib.toByteArray());
+			FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() {
+				public byte[] call() {
+					return toPng(copy, reverse, key);
+				}
+			});
+			imageExecutor.execute(task);
+			href = new SvgDataUri("image/png", task);
+		} else {
+			byte[] data = toPng(dib, reverse, key);
+			if (data == null) {
+				return null;
+			}
+			href = new SvgDataUri("image/png", data);
+		}
+		
+		image = doc.createElement("image");
+		image.setAttribute("id", "image" + (imageNo++));
+		image.setAttribute("width", "" + dib.getWidth());
+		image.setAttribute("height", "" + dib.getHeight());
+		
+		if (writer != null || imageExecutor != null) {
+			SvgWriter.setLazyAttribute(image, "xlink:href", href);
+		} else {
+			image.setAttribute("xlink:href", href.toString());
+		}
+		defsNode.appendChild(image);
+		
+		imageMap.put(key, image);
+		return image;
+	}
+	
+	private static String digest(Dib dib) {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		md.update(dib.getBuffer());
+		
+		byte[] hash = md.digest();
+		StringBuffer sb = new StringBuffer(hash.length * 2);
+		for (int i = 0; i < hash.length; i++) {
+			sb.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(hash[i] & 0xF, 16));
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Converts the bitmap to PNG through the image cache. This may be called on
+	 * the threads of the image executor.
+	 */
+	private byte[] toPng(Dib dib, boolean reverse, String key) {
+		ImageCache cache = imageCache;
+		byte[] data = (cache != null) ? cache.get(key) : null;
+		if (data == null) {
+			if (PngEncoder.isSupported(dib)) {
+				data = PngEncoder.encode(dib, reverse);
+			} else {
+				data = ImageUtil.convert(dibToBmp(dib), "png", reverse);
+			}
+			if (data != null && cache != null) {
+				cache.put(key, data);
+			}
+		}
+		return data;
 	}
 
-	private byte[] dibToBmp(byte[] dib) {
-		byte[] data = new byte[14 + dib.length];
+	private byte[] dibToBmp(Dib dib) {
+		byte[] data = new byte[14 + dib.getLength()];
 
 		/* BitmapFileHeader */
 		data[0] = 0x42; // 'B'
@@ -1582,45 +2174,13 @@ public class SvgGdi implements Gdi {
 		data[9] = 0x00;
 
 		// offset
-		long bfOffBits = 14;
-
-		/* BitmapInfoHeader */
-		long biSize = (dib[0] & 0xff) + ((dib[1] & 0xff) << 8)
-				+ ((dib[2] & 0xff) << 16) + ((dib[3] & 0xff) << 24);
-		bfOffBits += biSize;
-
-		int biBitCount = (dib[14] & 0xff) + ((dib[15] & 0xff) << 8);
-
-		long clrUsed = (dib[32] & 0xff) + ((dib[33] & 0xff) << 8)
-				+ ((dib[34] & 0xff) << 16) + ((dib[35] & 0xff) << 24);
-
-		switch (biBitCount) {
-		case 1:
-			bfOffBits += (0x1L + 1) * 4;
-			break;
-		case 4:
-			bfOffBits += (0xFL + 1) * 4;
-			break;
-		case 8:
-			bfOffBits += (0xFFL + 1) * 4;
-			break;
-		case 16:
-			bfOffBits += (clrUsed == 0L) ? 0 : (0xFFFFL + 1) * 4;
-			break;
-		case 24:
-			bfOffBits += (clrUsed == 0L) ? 0 : (0xFFFFFFL + 1) * 4;
-			break;
-		case 32:
-			bfOffBits += (clrUsed == 0L) ? 0 : (0xFFFFFFFFL + 1) * 4;
-			break;
-		}
-		
+		long bfOffBits = 14 + dib.getBitsOffset();
 		data[10] = (byte) (bfOffBits & 0xff);
 		data[11] = (byte) ((bfOffBits >> 8) & 0xff);
 		data[12] = (byte) ((bfOffBits >> 16) & 0xff);
 		data[13] = (byte) ((bfOffBits >> 24) & 0xff);
 		
-		System.arraycopy(dib, 0, data, 14, dib.length);
+		dib.getBuffer().get(data, 14, dib.getLength());
 
 		return data;
 	}
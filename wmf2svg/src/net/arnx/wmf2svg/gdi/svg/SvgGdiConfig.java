@@ -0,0 +1,201 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.gdi.svg;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * The settings of SvgGdi that do not change while converting.
+ *
+ * The font tables of SvgGdi.properties are read and parsed once, and the
+ * instance is immutable, so it can be shared by the SvgGdi instances on all
+ * the threads.
+ */
+public final class SvgGdiConfig {
+	private static final String FONT_EMHEIGHT = "font-emheight.";
+	private static final String ALTERNATIVE_FONT = "alternative-font.";
+
+	private static final int DEFAULT_PRECISION = 2;
+	
+	private static SvgGdiConfig defaultConfig;
+
+	private final Map<String, String> props;
+	private final Map<String, Double> fontEmHeights;
+	private final Map<String, String> alternativeFonts;
+	private final boolean compatible;
+	private final boolean replaceSymbolFont;
+	private final int precision;
+	private final DocumentBuilderFactory factory;
+
+	/**
+	 * Returns the configuration with SvgGdi.properties and the default flags.
+	 */
+	public static synchronized SvgGdiConfig getDefault() throws SvgGdiException {
+		if (defaultConfig == null) {
+			Properties props = new Properties();
+			InputStream in = null;
+			try {
+				in = SvgGdiConfig.class.getResourceAsStream("SvgGdi.properties");
+				props.load(in);
+			} catch (Exception e) {
+				throw new SvgGdiException("properties format error: SvgGDI.properties");
+			} finally {
+				try {
+					if (in != null) in.close();
+				} catch (IOException e) {
+					// no handle
+				}
+			}
+			defaultConfig = new SvgGdiConfig(props, false, false);
+		}
+		return defaultConfig;
+	}
+
+	/**
+	 * Create a SvgGdiConfig class instance.
+	 *
+	 * @param props the properties in the format of SvgGdi.properties.
+	 * @param compatible the compatible flag of SvgGdi.
+	 * @param replaceSymbolFont the replace symbol font flag of SvgGdi.
+	 */
+	public SvgGdiConfig(Properties props, boolean compatible, boolean replaceSymbolFont) throws SvgGdiException {
+		Map<String, String> map = new HashMap<String, String>();
+		Map<String, Double> fontEmHeights = new HashMap<String, Double>();
+		Map<String, String> alternativeFonts = new HashMap<String, String>();
+		for (Iterator<String> i = props.stringPropertyNames().iterator(); i.hasNext(); ) {
+			String key = i.next();
+			String value = props.getProperty(key);
+			map.put(key, value);
+			if (key.startsWith(FONT_EMHEIGHT)) {
+				try {
+					fontEmHeights.put(key.substring(FONT_EMHEIGHT.length()), Double.valueOf(value));
+				} catch (NumberFormatException e) {
+					throw new SvgGdiException("properties format error: " + key);
+				}
+			} else if (key.startsWith(ALTERNATIVE_FONT)) {
+				alternativeFonts.put(key.substring(ALTERNATIVE_FONT.length()), value);
+			}
+		}
+		this.props = Collections.unmodifiableMap(map);
+		this.fontEmHeights = Collections.unmodifiableMap(fontEmHeights);
+		this.alternativeFonts = Collections.unmodifiableMap(alternativeFonts);
+		this.compatible = compatible;
+		this.replaceSymbolFont = replaceSymbolFont;
+		this.precision = DEFAULT_PRECISION;
+		this.factory = DocumentBuilderFactory.newInstance();
+	}
+
+	private SvgGdiConfig(SvgGdiConfig config, boolean compatible, boolean replaceSymbolFont, int precision) {
+		this.props = config.props;
+		this.fontEmHeights = config.fontEmHeights;
+		this.alternativeFonts = config.alternativeFonts;
+		this.compatible = compatible;
+		this.replaceSymbolFont = replaceSymbolFont;
+		this.precision = precision;
+		this.factory = config.factory;
+	}
+
+	/**
+	 * Returns a configuration that has the same font tables and the
+	 * specified flags.
+	 */
+	public SvgGdiConfig withFlags(boolean compatible, boolean replaceSymbolFont) {
+		if (compatible == this.compatible && replaceSymbolFont == this.replaceSymbolFont) {
+			return this;
+		}
+		return new SvgGdiConfig(this, compatible, replaceSymbolFont, precision);
+	}
+
+	/**
+	 * Returns a configuration that has the same font tables and flags, and
+	 * the specified number of the fraction digits of the decimal coordinates.
+	 * The default is 2.
+	 *
+	 * @param precision the number of the fraction digits (0 - 8).
+	 */
+	public SvgGdiConfig withPrecision(int precision) {
+		if (precision < 0 || precision > 8) {
+			throw new IllegalArgumentException("precision: " + precision);
+		}
+		if (precision == this.precision) {
+			return this;
+		}
+		return new SvgGdiConfig(this, compatible, replaceSymbolFont, precision);
+	}
+
+	public boolean isCompatible() {
+		return compatible;
+	}
+
+	public boolean isReplaceSymbolFont() {
+		return replaceSymbolFont;
+	}
+
+	public int getPrecision() {
+		return precision;
+	}
+
+	public String getProperty(String key) {
+		return props.get(key);
+	}
+
+	/**
+	 * Returns the alternative name of a font.
+	 *
+	 * @return the name, or null if it has no alternative.
+	 */
+	public String getAlternativeFont(String faceName) {
+		return alternativeFonts.get(faceName);
+	}
+
+	/**
+	 * Returns the ratio of the em height to the cell height of a font. If the
+	 * font is not known, the ratio of its alternative font is used.
+	 *
+	 * @return the ratio, or 1.0 if the font is not known.
+	 */
+	public double getFontEmHeight(String faceName) {
+		Double value = fontEmHeights.get(faceName);
+		if (value == null) {
+			String alter = getAlternativeFont(faceName);
+			if (alter != null) {
+				value = fontEmHeights.get(alter);
+			}
+		}
+		return (value != null) ? value.doubleValue() : 1.0;
+	}
+
+	DocumentBuilder newDocumentBuilder() throws SvgGdiException {
+		// the factory is not thread safe.
+		synchronized (factory) {
+			try {
+				return factory.newDocumentBuilder();
+			} catch (ParserConfigurationException e) {
+				throw new SvgGdiException(e);
+			}
+		}
+	}
+}
@@ -79,7 +79,7 @@ class SvgPen extends SvgObject implements GdiPen {
 	}
 	
 	public Text createTextNode(String id) {
-		return getGDI().getDocument().createTextNode("." + id + " { " + toString() + " }\n");
+		return getGDI().getOwnerDocument().createTextNode("." + id + " { " + toString() + " }\n");
 	}
 
 	public String toString() {
@@ -33,7 +33,7 @@ class SvgRectRegion extends SvgRegion {
 	}
 	
 	public Element createElement() {
-		Element elem = getGDI().getDocument().createElement("rect");
+		Element elem = getGDI().getOwnerDocument().createElement("rect");
 		elem.setAttribute("x", "" + (int)getGDI().getDC().toAbsoluteX(getLeft()));
 		elem.setAttribute("y", "" + (int)getGDI().getDC().toAbsoluteY(getTop()));
 		elem.setAttribute("width", "" + (int)getGDI().getDC().toRelativeX(getRight() - getLeft()));
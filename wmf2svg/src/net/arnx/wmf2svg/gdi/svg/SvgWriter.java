@@ -0,0 +1,282 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.gdi.svg;
+
+import java.io.*;
+
+import org.w3c.dom.*;
+
+/**
+ * Serializes the SVG document without a DOM tree of the whole drawing.
+ *
+ * Body elements are written to a temporary spool file as soon as they are
+ * drawn. The root element, &lt;defs&gt; and &lt;style&gt; depend on the
+ * state at the end of the drawing, so they are written by {@link #close(Element)}
+ * before the spooled body is copied to the output. The spool is deleted by
+ * close(Element), or by {@link #abort()} when the drawing is not completed.
+ */
+class SvgWriter {
+	private static final String INDENT = "    ";
+
+	private static final String LAZY_VALUE = SvgWriter.class.getName() + ".lazyValue";
+
+	private OutputStream out;
+
+	private File spool;
+
+	private Writer body;
+
+	private Element group = null;
+
+	private boolean groupOpened = false;
+
+	public SvgWriter(OutputStream out) throws IOException {
+		this.out = out;
+		this.spool = File.createTempFile("wmf2svg", ".tmp");
+		try {
+			this.body = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(spool), "UTF-8"));
+		} catch (IOException e) {
+			spool.delete();
+			throw e;
+		}
+	}
+
+	/**
+	 * Sets an attribute whose value is written when the element is written.
+	 * The attribute value in the DOM is left empty.
+	 */
+	public static void setLazyAttribute(Element elem, String name, SvgDataUri value) {
+		elem.setAttribute(name, "");
+		elem.getAttributeNode(name).setUserData(LAZY_VALUE, value, null);
+	}
+
+	/**
+	 * Returns the value of a lazy attribute, or null if the attribute is not
+	 * lazy.
+	 */
+	public static SvgDataUri getLazyAttribute(Element elem, String name) {
+		Attr attr = elem.getAttributeNode(name);
+		return (attr != null) ? (SvgDataUri)attr.getUserData(LAZY_VALUE) : null;
+	}
+
+	/**
+	 * Sets the value of a lazy attribute to the DOM.
+	 */
+	public static void resolveLazyAttribute(Element elem, String name) {
+		Attr attr = elem.getAttributeNode(name);
+		Object lazy = (attr != null) ? attr.getUserData(LAZY_VALUE) : null;
+		if (lazy != null) {
+			attr.setValue(lazy.toString());
+			attr.setUserData(LAZY_VALUE, null, null);
+		}
+	}
+
+	/**
+	 * Starts a new group. The start tag is not written until the first child
+	 * is appended, so an empty group leaves no trace in the output.
+	 */
+	public void startGroup(Element g) throws IOException {
+		endGroup(false);
+		group = g;
+	}
+
+	public void appendChild(Element elem) throws IOException {
+		if (!groupOpened) {
+			body.write('\n');
+			writeIndent(body, 1);
+			writeStartTag(body, group, false);
+			groupOpened = true;
+		}
+		body.write('\n');
+		writeIndent(body, 2);
+		writeNode(body, elem, 2);
+	}
+
+	private void endGroup(boolean last) throws IOException {
+		if (groupOpened) {
+			body.write('\n');
+			writeIndent(body, 1);
+			body.write("</g>");
+		} else if (last && group != null) {
+			body.write('\n');
+			writeIndent(body, 1);
+			writeStartTag(body, group, true);
+		}
+		group = null;
+		groupOpened = false;
+	}
+
+	/**
+	 * Writes the whole document to the output stream and releases the spool.
+	 * The output stream is flushed but not closed.
+	 *
+	 * @param root the root element that holds the attributes and the
+	 *        non-body children (&lt;defs&gt; and &lt;style&gt;).
+	 */
+	public void close(Element root) throws IOException {
+		try {
+			endGroup(true);
+			body.close();
+
+			Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
+			writer.write("<!DOCTYPE svg PUBLIC \"-//W3C//DTD SVG 1.0//EN\"");
+			writer.write(" \"http://www.w3.org/TR/2001/REC-SVG-20010904/DTD/svg10.dtd\">\n");
+			writeStartTag(writer, root, false);
+			for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+				writer.write('\n');
+				writeIndent(writer, 1);
+				writeNode(writer, child, 1);
+			}
+
+			Reader reader = new InputStreamReader(new FileInputStream(spool), "UTF-8");
+			try {
+				char[] cbuf = new char[8192];
+				int n;
+				while ((n = reader.read(cbuf)) != -1) {
+					writer.write(cbuf, 0, n);
+				}
+			} finally {
+				reader.close();
+			}
+
+			writer.write("\n</svg>\n");
+			writer.flush();
+		} finally {
+			abort();
+		}
+	}
+
+	/**
+	 * Discards the spooled body without writing the document. It may be
+	 * called more than once, and after close(Element).
+	 */
+	public void abort() {
+		try {
+			body.close();
+		} catch (IOException e) {
+			// no handle
+		}
+		spool.delete();
+	}
+
+	/**
+	 * Serializes a node in the same manner as the JAXP identity transformer
+	 * with indentation enabled: elements that contain text are written inline.
+	 */
+	static void writeNode(Writer writer, Node node, int depth) throws IOException {
+		if (node.getNodeType() == Node.TEXT_NODE) {
+			writeEscaped(writer, node.getNodeValue(), false);
+			return;
+		}
+		if (node.getNodeType() != Node.ELEMENT_NODE) {
+			return;
+		}
+
+		Element elem = (Element)node;
+		if (!elem.hasChildNodes()) {
+			writeStartTag(writer, elem, true);
+			return;
+		}
+
+		boolean mixed = false;
+		for (Node child = elem.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.TEXT_NODE) {
+				mixed = true;
+				break;
+			}
+		}
+
+		writeStartTag(writer, elem, false);
+		for (Node child = elem.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (mixed) {
+				writeNode(writer, child, depth + 1);
+			} else {
+				writer.write('\n');
+				writeIndent(writer, depth + 1);
+				writeNode(writer, child, depth + 1);
+			}
+		}
+		if (!mixed) {
+			writer.write('\n');
+			writeIndent(writer, depth);
+		}
+		writer.write("</");
+		writer.write(elem.getTagName());
+		writer.write('>');
+	}
+
+	private static void writeStartTag(Writer writer, Element elem, boolean empty) throws IOException {
+		writer.write('<');
+		writer.write(elem.getTagName());
+		NamedNodeMap attrs = elem.getAttributes();
+		// namespace declarations come first as the transformer does
+		for (int pass = 0; pass < 2; pass++) {
+			for (int i = 0; i < attrs.getLength(); i++) {
+				Attr attr = (Attr)attrs.item(i);
+				if (attr.getName().startsWith("xmlns") != (pass == 0)) {
+					continue;
+				}
+				writer.write(' ');
+				writer.write(attr.getName());
+				writer.write("=\"");
+				Object lazy = attr.getUserData(LAZY_VALUE);
+				if (lazy != null) {
+					((SvgDataUri)lazy).write(writer);
+				} else {
+					writeEscaped(writer, attr.getValue(), true);
+				}
+				writer.write('"');
+			}
+		}
+		writer.write(empty ? "/>" : ">");
+	}
+
+	private static void writeIndent(Writer writer, int depth) throws IOException {
+		for (int i = 0; i < depth; i++) {
+			writer.write(INDENT);
+		}
+	}
+
+	private static void writeEscaped(Writer writer, String str, boolean attr) throws IOException {
+		int start = 0;
+		for (int i = 0; i < str.length(); i++) {
+			String replace = null;
+			char c = str.charAt(i);
+			switch (c) {
+				case '&': replace = "&amp;"; break;
+				case '<': replace = "&lt;"; break;
+				case '>': replace = "&gt;"; break;
+				case '\r': replace = "&#13;"; break;
+				case '"': if (attr) replace = "&quot;"; break;
+				case '\n': if (attr) replace = "&#10;"; break;
+				case '\t': if (attr) replace = "&#9;"; break;
+				default:
+					// the other control characters are escaped as the transformer does
+					if (c < 0x20 || (!attr && c >= 0x7F && c <= 0x9F)) {
+						replace = "&#" + (int)c + ";";
+					}
+			}
+			if (replace != null) {
+				if (start < i) writer.write(str, start, i - start);
+				writer.write(replace);
+				start = i + 1;
+			}
+		}
+		if (start < str.length()) writer.write(str, start, str.length() - start);
+	}
+}
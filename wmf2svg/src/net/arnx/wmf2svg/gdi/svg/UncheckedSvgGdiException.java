@@ -0,0 +1,41 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.gdi.svg;
+
+/**
+ * Wraps a SvgGdiException that occurs in a method of the Gdi interface,
+ * that cannot throw a checked exception. For example, the write errors of
+ * the streaming output are thrown as this exception while drawing.
+ */
+public class UncheckedSvgGdiException extends RuntimeException {
+	/**
+	 * The class fingerprint that is set to indicate serialization compatibility
+	 * with a previous version of the class.
+	 */
+	private static final long serialVersionUID = 4838194726201958532L;
+
+	public UncheckedSvgGdiException(SvgGdiException cause) {
+		super(cause);
+	}
+
+	public UncheckedSvgGdiException(String message, SvgGdiException cause) {
+		super(message, cause);
+	}
+
+	public SvgGdiException getCause() {
+		return (SvgGdiException)super.getCause();
+	}
+}
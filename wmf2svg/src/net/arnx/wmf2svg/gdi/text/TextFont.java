@@ -0,0 +1,118 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.gdi.text;
+
+import net.arnx.wmf2svg.gdi.GdiFont;
+import net.arnx.wmf2svg.gdi.GdiUtils;
+
+class TextFont implements GdiFont {
+	private int height;
+	private int width;
+	private int escapement;
+	private int orientation;
+	private int weight;
+	private boolean italic;
+	private boolean underline;
+	private boolean strikeout;
+	private int charset;
+	private int outPrecision;
+	private int clipPrecision;
+	private int quality;
+	private int pitchAndFamily;
+	private byte[] faceName;
+	private String faceNameString;
+
+	public TextFont(int height, int width, int escapement, int orientation, int weight,
+			boolean italic, boolean underline, boolean strikeout, int charset, int outPrecision,
+			int clipPrecision, int quality, int pitchAndFamily, byte[] faceName) {
+		this.height = height;
+		this.width = width;
+		this.escapement = escapement;
+		this.orientation = orientation;
+		this.weight = weight;
+		this.italic = italic;
+		this.underline = underline;
+		this.strikeout = strikeout;
+		this.charset = charset;
+		this.outPrecision = outPrecision;
+		this.clipPrecision = clipPrecision;
+		this.quality = quality;
+		this.pitchAndFamily = pitchAndFamily;
+		this.faceName = faceName;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getEscapement() {
+		return escapement;
+	}
+
+	public int getOrientation() {
+		return orientation;
+	}
+
+	public int getWeight() {
+		return weight;
+	}
+
+	public boolean isItalic() {
+		return italic;
+	}
+
+	public boolean isUnderlined() {
+		return underline;
+	}
+
+	public boolean isStrikedOut() {
+		return strikeout;
+	}
+
+	public int getCharset() {
+		return charset;
+	}
+
+	public int getOutPrecision() {
+		return outPrecision;
+	}
+
+	public int getClipPrecision() {
+		return clipPrecision;
+	}
+
+	public int getQuality() {
+		return quality;
+	}
+
+	public int getPitchAndFamily() {
+		return pitchAndFamily;
+	}
+
+	/**
+	 * Returns the face name, that is decoded when it is first used.
+	 */
+	public String getFaceName() {
+		if (faceNameString == null) {
+			faceNameString = GdiUtils.convertString(faceName, charset);
+		}
+		return faceNameString;
+	}
+}
@@ -0,0 +1,494 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.gdi.text;
+
+import java.io.IOException;
+import java.util.LinkedList;
+
+import net.arnx.wmf2svg.gdi.Dib;
+import net.arnx.wmf2svg.gdi.Gdi;
+import net.arnx.wmf2svg.gdi.GdiBrush;
+import net.arnx.wmf2svg.gdi.GdiFont;
+import net.arnx.wmf2svg.gdi.GdiObject;
+import net.arnx.wmf2svg.gdi.GdiPalette;
+import net.arnx.wmf2svg.gdi.GdiPatternBrush;
+import net.arnx.wmf2svg.gdi.GdiPen;
+import net.arnx.wmf2svg.gdi.GdiRegion;
+import net.arnx.wmf2svg.gdi.Point;
+import net.arnx.wmf2svg.gdi.Size;
+import net.arnx.wmf2svg.gdi.TextDecoder;
+import net.arnx.wmf2svg.gdi.wmf.WmfParser;
+
+/**
+ * A Gdi that extracts the text of a metafile, for example to index it.
+ *
+ * The text of textOut and extTextOut is decoded with the charset of the
+ * selected font, and passed to a handler as a run with its position. The
+ * position is the reference point in the logical coordinates relative to
+ * the window origin, so it is only good to sort the runs roughly. The
+ * other records are ignored, and WmfParser can skip them without reading
+ * their parameters:
+ *
+ * <pre>
+ * WmfParser parser = new WmfParser();
+ * parser.setSkippedRecords(TextGdi.getSkippedRecords());
+ * parser.parse(in, new TextGdi(writer));
+ * </pre>
+ */
+public class TextGdi implements Gdi {
+	private static final int[] SKIPPED_RECORDS = {
+		WmfParser.RECORD_ANIMATE_PALETTE,
+		WmfParser.RECORD_ARC,
+		WmfParser.RECORD_BIT_BLT,
+		WmfParser.RECORD_CHORD,
+		WmfParser.RECORD_DIB_BIT_BLT,
+		WmfParser.RECORD_DIB_STRETCH_BLT,
+		WmfParser.RECORD_ELLIPSE,
+		WmfParser.RECORD_ESCAPE,
+		WmfParser.RECORD_EXCLUDE_CLIP_RECT,
+		WmfParser.RECORD_EXT_FLOOD_FILL,
+		WmfParser.RECORD_FILL_RGN,
+		WmfParser.RECORD_FLOOD_FILL,
+		WmfParser.RECORD_FRAME_RGN,
+		WmfParser.RECORD_INTERSECT_CLIP_RECT,
+		WmfParser.RECORD_INVERT_RGN,
+		WmfParser.RECORD_OFFSET_CLIP_RGN,
+		WmfParser.RECORD_PAINT_RGN,
+		WmfParser.RECORD_PAT_BLT,
+		WmfParser.RECORD_PIE,
+		WmfParser.RECORD_POLYGON,
+		WmfParser.RECORD_POLYLINE,
+		WmfParser.RECORD_POLY_POLYGON,
+		WmfParser.RECORD_REALIZE_PALETTE,
+		WmfParser.RECORD_RECTANGLE,
+		WmfParser.RECORD_RESIZE_PALETTE,
+		WmfParser.RECORD_ROUND_RECT,
+		WmfParser.RECORD_SELECT_CLIP_RGN,
+		WmfParser.RECORD_SELECT_PALETTE,
+		WmfParser.RECORD_SET_BK_COLOR,
+		WmfParser.RECORD_SET_BK_MODE,
+		WmfParser.RECORD_SET_DIBITS_TO_DEVICE,
+		WmfParser.RECORD_SET_PALETTE_ENTRIES,
+		WmfParser.RECORD_SET_PIXEL,
+		WmfParser.RECORD_SET_POLY_FILL_MODE,
+		WmfParser.RECORD_SET_ROP2,
+		WmfParser.RECORD_SET_STRETCH_BLT_MODE,
+		WmfParser.RECORD_SET_TEXT_COLOR,
+		WmfParser.RECORD_STRETCH_BLT,
+		WmfParser.RECORD_STRETCH_DIBITS,
+	};
+
+	// returned for the objects other than the fonts
+	private static final Placeholder PLACEHOLDER = new Placeholder();
+
+	private Handler handler;
+
+	private GdiFont font = null;
+	private int textAlign = TA_TOP | TA_LEFT;
+	private int wx = 0;
+	private int wy = 0;
+	private int cx = 0;
+	private int cy = 0;
+	private LinkedList<Object[]> saveDC = new LinkedList<Object[]>();
+	private TextDecoder decoder = new TextDecoder();
+
+	/**
+	 * Receives the runs of the text.
+	 */
+	public interface Handler {
+		/**
+		 * @param text the decoded text.
+		 * @param x the x of the reference point relative to the window origin.
+		 * @param y the y of the reference point relative to the window origin.
+		 * @param font the selected font, or null if no font is selected.
+		 */
+		public void text(String text, int x, int y, GdiFont font);
+	}
+
+	public TextGdi(Handler handler) {
+		this.handler = handler;
+	}
+
+	/**
+	 * Create a TextGdi that appends each run and a line feed.
+	 */
+	public TextGdi(final Appendable out) {
+		this(new Handler() {
+			public void text(String text, int x, int y, GdiFont font) {
+				try {
+					out.append(text).append('\n');
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the function numbers of the records that this class ignores,
+	 * and that do not create objects.
+	 */
+	public static int[] getSkippedRecords() {
+		return SKIPPED_RECORDS.clone();
+	}
+
+	public void placeableHeader(int vsx, int vsy, int vex, int vey, int dpi) {
+	}
+
+	public void header() {
+	}
+
+	public void textOut(int x, int y, byte[] text) {
+		text(x, y, 0, text);
+	}
+
+	public void extTextOut(int x, int y, int options, int[] rect, byte[] text, int[] lpdx) {
+		text(x, y, options, text);
+	}
+
+	private void text(int x, int y, int options, byte[] text) {
+		// the glyph indexes cannot be decoded.
+		if (text == null || text.length == 0 || (options & ETO_GLYPH_INDEX) != 0) {
+			return;
+		}
+
+		String str = decoder.decode(text, (font != null) ? font.getCharset() : GdiFont.DEFAULT_CHARSET);
+		if (str.length() == 0) {
+			return;
+		}
+
+		if ((textAlign & TA_UPDATECP) != 0) {
+			x = cx;
+			y = cy;
+		}
+		handler.text(str, x - wx, y - wy, font);
+	}
+
+	public GdiFont createFontIndirect(int height, int width, int escapement, int orientation, int weight,
+			boolean italic, boolean underline, boolean strikeout, int charset, int outPrecision,
+			int clipPrecision, int quality, int pitchAndFamily, byte[] faceName) {
+		return new TextFont(height, width, escapement, orientation, weight, italic, underline, strikeout,
+				charset, outPrecision, clipPrecision, quality, pitchAndFamily, faceName);
+	}
+
+	public void selectObject(GdiObject obj) {
+		if (obj instanceof GdiFont) {
+			font = (GdiFont)obj;
+		}
+	}
+
+	public void deleteObject(GdiObject obj) {
+		if (obj == font) {
+			font = null;
+		}
+	}
+
+	public void setTextAlign(int align) {
+		textAlign = align;
+	}
+
+	public void setWindowOrgEx(int x, int y, Point old) {
+		if (old != null) {
+			old.x = wx;
+			old.y = wy;
+		}
+		wx = x;
+		wy = y;
+	}
+
+	public void offsetWindowOrgEx(int x, int y, Point old) {
+		if (old != null) {
+			old.x = wx;
+			old.y = wy;
+		}
+		wx += x;
+		wy += y;
+	}
+
+	public void moveToEx(int x, int y, Point old) {
+		if (old != null) {
+			old.x = cx;
+			old.y = cy;
+		}
+		cx = x;
+		cy = y;
+	}
+
+	public void lineTo(int ex, int ey) {
+		cx = ex;
+		cy = ey;
+	}
+
+	public void seveDC() {
+		saveDC.add(new Object[] { font, new int[] { textAlign, wx, wy, cx, cy } });
+	}
+
+	public void restoreDC(int savedDC) {
+		int limit = (savedDC < 0) ? -savedDC : saveDC.size() - savedDC;
+		for (int i = 0; i < limit && !saveDC.isEmpty(); i++) {
+			Object[] state = saveDC.removeLast();
+			int[] values = (int[])state[1];
+			font = (GdiFont)state[0];
+			textAlign = values[0];
+			wx = values[1];
+			wy = values[2];
+			cx = values[3];
+			cy = values[4];
+		}
+	}
+
+	public void footer() {
+	}
+
+	public GdiBrush createBrushIndirect(int style, int color, int hatch) {
+		return PLACEHOLDER;
+	}
+
+	public GdiPalette createPalette(int version, int[] palEntry) {
+		return PLACEHOLDER;
+	}
+
+	public GdiPatternBrush createPatternBrush(byte[] image) {
+		return PLACEHOLDER;
+	}
+
+	public GdiPen createPenIndirect(int style, int width, int color) {
+		return PLACEHOLDER;
+	}
+
+	public GdiRegion createRectRgn(int left, int top, int right, int bottom) {
+		return PLACEHOLDER;
+	}
+
+	public GdiPatternBrush dibCreatePatternBrush(byte[] image, int usage) {
+		return PLACEHOLDER;
+	}
+
+	public GdiPatternBrush dibCreatePatternBrush(Dib image, int usage) {
+		return PLACEHOLDER;
+	}
+
+	public void animatePalette(GdiPalette palette, int startIndex, int[] entries) {
+	}
+
+	public void arc(int sxr, int syr, int exr, int eyr, int sxa, int sya, int exa, int eya) {
+	}
+
+	public void bitBlt(byte[] image, int dx, int dy, int dw, int dh, int sx, int sy, long rop) {
+	}
+
+	public void bitBlt(Dib image, int dx, int dy, int dw, int dh, int sx, int sy, long rop) {
+	}
+
+	public void chord(int sxr, int syr, int exr, int eyr, int sxa, int sya, int exa, int eya) {
+	}
+
+	public void dibBitBlt(byte[] image, int dx, int dy, int dw, int dh, int sx, int sy, long rop) {
+	}
+
+	public void dibBitBlt(Dib image, int dx, int dy, int dw, int dh, int sx, int sy, long rop) {
+	}
+
+	public void dibStretchBlt(byte[] image, int dx, int dy, int dw, int dh, int sx, int sy, int sw, int sh, long rop) {
+	}
+
+	public void dibStretchBlt(Dib image, int dx, int dy, int dw, int dh, int sx, int sy, int sw, int sh, long rop) {
+	}
+
+	public void ellipse(int sx, int sy, int ex, int ey) {
+	}
+
+	public void escape(byte[] data) {
+	}
+
+	public int excludeClipRect(int left, int top, int right, int bottom) {
+		return 0;
+	}
+
+	public void extFloodFill(int x, int y, int color, int type) {
+	}
+
+	public void fillRgn(GdiRegion rgn, GdiBrush brush) {
+	}
+
+	public void floodFill(int x, int y, int color) {
+	}
+
+	public void frameRgn(GdiRegion rgn, GdiBrush brush, int w, int h) {
+	}
+
+	public void intersectClipRect(int left, int top, int right, int bottom) {
+	}
+
+	public void invertRgn(GdiRegion rgn) {
+	}
+
+	public void offsetClipRgn(int x, int y) {
+	}
+
+	public void offsetViewportOrgEx(int x, int y, Point point) {
+	}
+
+	public void paintRgn(GdiRegion rgn) {
+	}
+
+	public void patBlt(int x, int y, int width, int height, long rop) {
+	}
+
+	public void pie(int sx, int sy, int ex, int ey, int sxr, int syr, int exr, int eyr) {
+	}
+
+	public void polygon(Point[] points) {
+	}
+
+	public void polyline(Point[] points) {
+	}
+
+	public void polyPolygon(Point[][] points) {
+	}
+
+	public void polygon(int[] points, int count) {
+	}
+
+	public void polyline(int[] points, int count) {
+	}
+
+	public void polyPolygon(int[] points, int[] counts, int polygons) {
+	}
+
+	public void realizePalette() {
+	}
+
+	public void rectangle(int sx, int sy, int ex, int ey) {
+	}
+
+	public void resizePalette(GdiPalette palette) {
+	}
+
+	public void roundRect(int sx, int sy, int ex, int ey, int rw, int rh) {
+	}
+
+	public void scaleViewportExtEx(int x, int xd, int y, int yd, Size old) {
+	}
+
+	public void scaleWindowExtEx(int x, int xd, int y, int yd, Size old) {
+	}
+
+	public void selectClipRgn(GdiRegion rgn) {
+	}
+
+	public void selectPalette(GdiPalette palette, boolean mode) {
+	}
+
+	public void setBkColor(int color) {
+	}
+
+	public void setBkMode(int mode) {
+	}
+
+	public void setDIBitsToDevice(int dx, int dy, int dw, int dh, int sx, int sy, int startscan, int scanlines, byte[] image, int colorUse) {
+	}
+
+	public void setDIBitsToDevice(int dx, int dy, int dw, int dh, int sx, int sy, int startscan, int scanlines, Dib image, int colorUse) {
+	}
+
+	public void setLayout(long layout) {
+	}
+
+	public void setMapMode(int mode) {
+	}
+
+	public void setMapperFlags(long flags) {
+	}
+
+	public void setPaletteEntries(GdiPalette palette, int startIndex, int[] entries) {
+	}
+
+	public void setPixel(int x, int y, int color) {
+	}
+
+	public void setPolyFillMode(int mode) {
+	}
+
+	public void setRelAbs(int mode) {
+	}
+
+	public void setROP2(int mode) {
+	}
+
+	public void setStretchBltMode(int mode) {
+	}
+
+	public void setTextCharacterExtra(int extra) {
+	}
+
+	public void setTextColor(int color) {
+	}
+
+	public void setTextJustification(int breakExtra, int breakCount) {
+	}
+
+	public void setViewportExtEx(int x, int y, Size old) {
+	}
+
+	public void setViewportOrgEx(int x, int y, Point old) {
+	}
+
+	public void setWindowExtEx(int width, int height, Size old) {
+	}
+
+	public void stretchBlt(byte[] image, int dx, int dy, int dw, int dh, int sx, int sy, int sw, int sh, long rop) {
+	}
+
+	public void stretchBlt(Dib image, int dx, int dy, int dw, int dh, int sx, int sy, int sw, int sh, long rop) {
+	}
+
+	public void stretchDIBits(int dx, int dy, int dw, int dh, int sx, int sy, int sw, int sh, byte[] image, int usage, long rop) {
+	}
+
+	public void stretchDIBits(int dx, int dy, int dw, int dh, int sx, int sy, int sw, int sh, Dib image, int usage, long rop) {
+	}
+
+	private static class Placeholder implements GdiBrush, GdiPen, GdiPalette, GdiPatternBrush, GdiRegion {
+		public int getStyle() {
+			return 0;
+		}
+
+		public int getColor() {
+			return 0;
+		}
+
+		public int getHatch() {
+			return 0;
+		}
+
+		public int getWidth() {
+			return 0;
+		}
+
+		public int getVersion() {
+			return 0;
+		}
+
+		public int[] getEntries() {
+			return new int[0];
+		}
+
+		public byte[] getPattern() {
+			return new byte[0];
+		}
+	}
+}
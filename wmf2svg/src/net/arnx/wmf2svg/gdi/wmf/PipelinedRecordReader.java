@@ -0,0 +1,230 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.gdi.wmf;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import net.arnx.wmf2svg.io.BufferedDataInput;
+
+/**
+ * Reads the records of another reader ahead on a second thread.
+ *
+ * The second thread copies each record into a slot of a bounded ring, and
+ * next() takes the slots in order. The producer waits while all the slots
+ * are full and the consumer waits while they are empty, so at most the
+ * given number of records are held in memory. An exception of the producer
+ * is thrown by next() at the record where it occurred, and close() stops
+ * the producer when the consumer fails.
+ *
+ * The arrays of the slots are reused for the next records, except the
+ * arrays of the bitmap records: WmfParser passes a bitmap to the gdi as a
+ * slice of its record, and the gdi may keep it.
+ *
+ * The parameters of a record are limited to its size, so a broken record
+ * that is shorter than its parameters ends the file as a truncated one.
+ */
+final class PipelinedRecordReader extends WmfRecordReader implements Runnable {
+	private static final byte[] EMPTY = new byte[0];
+
+	private final WmfRecordReader source;
+	private final Slot[] slots;
+
+	// the count of the slots taken by the consumer and put by the producer
+	private long head = 0;
+	private long tail = 0;
+	private boolean consumerWaiting = false;
+	private boolean producerWaiting = false;
+	private boolean closed = false;
+
+	private Thread thread;
+	private boolean taken = false;
+
+	PipelinedRecordReader(WmfRecordReader source, int size) {
+		super((BufferedDataInput)null);
+		if (size < 1) {
+			throw new IllegalArgumentException("size: " + size);
+		}
+		this.source = source;
+		this.slots = new Slot[size];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = new Slot();
+		}
+	}
+
+	/**
+	 * Reads the header on the calling thread, and starts the producer.
+	 */
+	public void readHeader() throws IOException, WmfParseException {
+		if (thread != null) {
+			return;
+		}
+		source.readHeader();
+		setHeader(source);
+
+		thread = new Thread(this, "WmfParser-pipeline");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public boolean next() throws IOException, WmfParseException {
+		if (thread == null) {
+			readHeader();
+		}
+
+		Slot slot;
+		synchronized (this) {
+			if (taken) {
+				head++;
+				taken = false;
+				if (producerWaiting) notify();
+			}
+			try {
+				while (head == tail) {
+					consumerWaiting = true;
+					wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			} finally {
+				consumerWaiting = false;
+			}
+			slot = slots[(int)(head % slots.length)];
+		}
+
+		if (slot.error != null) {
+			Throwable e = slot.error;
+			if (e instanceof IOException) throw (IOException)e;
+			if (e instanceof WmfParseException) throw (WmfParseException)e;
+			if (e instanceof RuntimeException) throw (RuntimeException)e;
+			throw (Error)e;
+		}
+		if (slot.id == 0) {
+			setRecord(slot.offset, slot.size, 0, new BufferedDataInput(EMPTY, ByteOrder.LITTLE_ENDIAN));
+			return false;
+		}
+
+		taken = true;
+		setRecord(slot.offset, slot.size, slot.id,
+			new BufferedDataInput(ByteBuffer.wrap(slot.data, 0, slot.length), ByteOrder.LITTLE_ENDIAN));
+		return true;
+	}
+
+	/**
+	 * Stops the producer and waits for it. The source is closed by the
+	 * producer when it ends.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			notify();
+		}
+
+		if (thread == null) {
+			source.close();
+		} else if (thread != Thread.currentThread()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public void run() {
+		try {
+			while (true) {
+				Slot slot;
+				synchronized (this) {
+					try {
+						while (tail - head == slots.length && !closed) {
+							producerWaiting = true;
+							wait();
+						}
+					} catch (InterruptedException e) {
+						return;
+					} finally {
+						producerWaiting = false;
+					}
+					if (closed) {
+						return;
+					}
+					slot = slots[(int)(tail % slots.length)];
+				}
+
+				boolean end;
+				try {
+					end = !read(slot);
+				} catch (Throwable e) {
+					slot.error = e;
+					end = true;
+				}
+
+				synchronized (this) {
+					tail++;
+					if (consumerWaiting) notify();
+				}
+				if (end) {
+					return;
+				}
+			}
+		} finally {
+			source.close();
+		}
+	}
+
+	private boolean read(Slot slot) throws IOException, WmfParseException {
+		slot.error = null;
+		if (!source.next()) {
+			slot.offset = source.getOffset();
+			slot.size = source.getSize();
+			slot.id = 0;
+			return false;
+		}
+
+		int length = Math.max(source.getRemaining(), 0);
+		if (WmfParser.isBitmapRecord(source.getId())) {
+			slot.data = new byte[length];
+			slot.shared = true;
+		} else if (slot.shared || slot.data.length < length) {
+			slot.data = (length > 0) ? new byte[Math.max(length, 64)] : EMPTY;
+			slot.shared = false;
+		}
+		source.readFully(slot.data, 0, length);
+
+		slot.offset = source.getOffset();
+		slot.size = source.getSize();
+		slot.id = source.getId();
+		slot.length = length;
+		return true;
+	}
+
+	private static class Slot {
+		long offset;
+		long size;
+		int id;
+		byte[] data = EMPTY;
+		int length;
+		boolean shared;
+		Throwable error;
+	}
+}
@@ -14,6 +14,7 @@ import net.arnx.wmf2svg.gdi.GdiPalette;
 import net.arnx.wmf2svg.gdi.GdiPatternBrush;
 import net.arnx.wmf2svg.gdi.GdiPen;
 import net.arnx.wmf2svg.gdi.GdiRegion;
+import net.arnx.wmf2svg.gdi.GdiUtils;
 import net.arnx.wmf2svg.gdi.Point;
 import net.arnx.wmf2svg.gdi.Size;
 
@@ -23,12 +24,13 @@ public class WmfGdi implements Gdi, WmfConstants {
 
 	private List objects = new ArrayList();
 	private List records = new ArrayList();
+	private boolean closed = false;
 	
 	public WmfGdi() {
 	}
 	
 	public void write(OutputStream out) throws IOException {
-		footer();
+		if (!closed) footer();
 		if (placeableHeader != null) out.write(placeableHeader);
 		if (header != null) out.write(header);
 		
@@ -110,8 +112,8 @@ public class WmfGdi implements Gdi, WmfConstants {
 		pos = setUint32(record, pos, rop);
 		pos = setInt16(record, pos, sy);
 		pos = setInt16(record, pos, sx);
-		pos = setInt16(record, pos, dw);
 		pos = setInt16(record, pos, dh);
+		pos = setInt16(record, pos, dw);
 		pos = setInt16(record, pos, dy);
 		pos = setInt16(record, pos, dx);
 		pos = setBytes(record, pos, image);
@@ -265,8 +267,8 @@ public class WmfGdi implements Gdi, WmfConstants {
 		pos = setUint32(record, pos, rop);
 		pos = setInt16(record, pos, sy);
 		pos = setInt16(record, pos, sx);
-		pos = setInt16(record, pos, dw);
 		pos = setInt16(record, pos, dh);
+		pos = setInt16(record, pos, dw);
 		pos = setInt16(record, pos, dy);
 		pos = setInt16(record, pos, dx);
 		pos = setBytes(record, pos, image);
@@ -301,8 +303,8 @@ public class WmfGdi implements Gdi, WmfConstants {
 		pos = setInt16(record, pos, sw);
 		pos = setInt16(record, pos, sy);
 		pos = setInt16(record, pos, sx);
-		pos = setInt16(record, pos, dw);
 		pos = setInt16(record, pos, dh);
+		pos = setInt16(record, pos, dw);
 		pos = setInt16(record, pos, dy);
 		pos = setInt16(record, pos, dx);
 		pos = setBytes(record, pos, image);
@@ -363,7 +365,7 @@ public class WmfGdi implements Gdi, WmfConstants {
 		if (rect != null && rect.length != 4) {
 			throw new IllegalArgumentException("rect must be 4 length.");
 		}
-		byte[] record = new byte[14 + ((rect != null) ? 8 : 0) + (text.length + text.length%2) + (lpdx.length * 2)];
+		byte[] record = new byte[14 + ((rect != null) ? 8 : 0) + (text.length + text.length%2) + ((lpdx != null) ? lpdx.length * 2 : 0)];
 		int pos = 0;
 		pos = setUint32(record, pos, record.length/2);
 		pos = setUint16(record, pos, RECORD_EXT_TEXT_OUT);
@@ -379,8 +381,10 @@ public class WmfGdi implements Gdi, WmfConstants {
 		}
 		pos = setBytes(record, pos, text);
 		if (text.length%2 == 1) pos = setByte(record, pos, 0);
-		for (int i = 0; i < lpdx.length; i++) {
-			pos = setInt16(record, pos, lpdx[i]);
+		if (lpdx != null) {
+			for (int i = 0; i < lpdx.length; i++) {
+				pos = setInt16(record, pos, lpdx[i]);
+			}
 		}
 		records.add(record);
 	}
@@ -389,9 +393,9 @@ public class WmfGdi implements Gdi, WmfConstants {
 		byte[] record = new byte[10];
 		int pos = 0;
 		pos = setUint32(record, pos, record.length/2);
-		pos = setUint16(record, pos, RECORD_FLOOD_FILL);
+		pos = setUint16(record, pos, RECORD_FILL_RGN);
 		pos = setUint16(record, pos, ((WmfBrush)brush).getID());
-		pos = setUint16(record, pos, ((WmfRegion)rgn).getID());
+		pos = setUint16(record, pos, ((WmfObject)rgn).getID());
 		records.add(record);
 	}
 	
@@ -414,7 +418,7 @@ public class WmfGdi implements Gdi, WmfConstants {
 		pos = setInt16(record, pos, h);
 		pos = setInt16(record, pos, w);
 		pos = setUint16(record, pos, ((WmfBrush)brush).getID());
-		pos = setUint16(record, pos, ((WmfRegion)rgn).getID());
+		pos = setUint16(record, pos, ((WmfObject)rgn).getID());
 		records.add(record);
 	}
 
@@ -435,7 +439,7 @@ public class WmfGdi implements Gdi, WmfConstants {
 		int pos = 0;
 		pos = setUint32(record, pos, record.length/2);
 		pos = setUint16(record, pos, RECORD_INVERT_RGN);
-		pos = setUint16(record, pos, ((WmfRegion)rgn).getID());
+		pos = setUint16(record, pos, ((WmfObject)rgn).getID());
 		records.add(record);
 	}
 
@@ -497,7 +501,7 @@ public class WmfGdi implements Gdi, WmfConstants {
 		int pos = 0;
 		pos = setUint32(record, pos, record.length/2);
 		pos = setUint16(record, pos, RECORD_PAINT_RGN);
-		pos = setUint16(record, pos, ((WmfRegion)rgn).getID());
+		pos = setUint16(record, pos, ((WmfObject)rgn).getID());
 		records.add(record);
 	}
 
@@ -531,27 +535,33 @@ public class WmfGdi implements Gdi, WmfConstants {
 	}
 
 	public void polygon(Point[] points) {
-		byte[] record = new byte[8 + points.length * 4];
+		polygon(GdiUtils.toArray(points), points.length);
+	}
+
+	public void polygon(int[] points, int count) {
+		byte[] record = new byte[8 + count * 4];
 		int pos = 0;
 		pos = setUint32(record, pos, record.length/2);
 		pos = setUint16(record, pos, RECORD_POLYGON);
-		pos = setInt16(record, pos, points.length);
-		for (int i = 0; i < points.length; i++) {
-			pos = setInt16(record, pos, points[i].x);
-			pos = setInt16(record, pos, points[i].y);
+		pos = setInt16(record, pos, count);
+		for (int i = 0; i < count * 2; i++) {
+			pos = setInt16(record, pos, points[i]);
 		}
 		records.add(record);
 	}
 
 	public void polyline(Point[] points) {
-		byte[] record = new byte[8 + points.length * 4];
+		polyline(GdiUtils.toArray(points), points.length);
+	}
+
+	public void polyline(int[] points, int count) {
+		byte[] record = new byte[8 + count * 4];
 		int pos = 0;
 		pos = setUint32(record, pos, record.length/2);
 		pos = setUint16(record, pos, RECORD_POLYLINE);
-		pos = setInt16(record, pos, points.length);
-		for (int i = 0; i < points.length; i++) {
-			pos = setInt16(record, pos, points[i].x);
-			pos = setInt16(record, pos, points[i].y);
+		pos = setInt16(record, pos, count);
+		for (int i = 0; i < count * 2; i++) {
+			pos = setInt16(record, pos, points[i]);
 		}
 		records.add(record);
 	}
@@ -564,7 +574,7 @@ public class WmfGdi implements Gdi, WmfConstants {
 		byte[] record = new byte[length];
 		int pos = 0;
 		pos = setUint32(record, pos, record.length/2);
-		pos = setUint16(record, pos, RECORD_POLYLINE);
+		pos = setUint16(record, pos, RECORD_POLY_POLYGON);
 		pos = setInt16(record, pos, points.length);
 		for (int i = 0; i < points.length; i++) {
 			pos = setInt16(record, pos, points[i].length);
@@ -578,6 +588,25 @@ public class WmfGdi implements Gdi, WmfConstants {
 		records.add(record);
 	}
 
+	public void polyPolygon(int[] points, int[] counts, int polygons) {
+		int total = 0;
+		for (int i = 0; i < polygons; i++) {
+			total += counts[i];
+		}
+		byte[] record = new byte[8 + polygons * 2 + total * 4];
+		int pos = 0;
+		pos = setUint32(record, pos, record.length/2);
+		pos = setUint16(record, pos, RECORD_POLY_POLYGON);
+		pos = setInt16(record, pos, polygons);
+		for (int i = 0; i < polygons; i++) {
+			pos = setInt16(record, pos, counts[i]);
+		}
+		for (int i = 0; i < total * 2; i++) {
+			pos = setInt16(record, pos, points[i]);
+		}
+		records.add(record);
+	}
+
 	public void realizePalette() {
 		byte[] record = new byte[6];
 		int pos = 0;
@@ -611,7 +640,7 @@ public class WmfGdi implements Gdi, WmfConstants {
 		byte[] record = new byte[8];
 		int pos = 0;
 		pos = setUint32(record, pos, record.length/2);
-		pos = setUint16(record, pos, RECORD_REALIZE_PALETTE);
+		pos = setUint16(record, pos, RECORD_RESIZE_PALETTE);
 		pos = setUint16(record, pos, ((WmfPalette)palette).getID());
 		records.add(record);
 	}
@@ -669,7 +698,7 @@ public class WmfGdi implements Gdi, WmfConstants {
 		int pos = 0;
 		pos = setUint32(record, pos, record.length/2);
 		pos = setUint16(record, pos, RECORD_SELECT_CLIP_RGN);
-		pos = setUint16(record, pos, ((WmfRegion)rgn).getID());
+		pos = setUint16(record, pos, ((WmfObject)rgn).getID());
 		records.add(record);
 	}
 
@@ -721,8 +750,8 @@ public class WmfGdi implements Gdi, WmfConstants {
 		pos = setUint16(record, pos, startscan);
 		pos = setInt16(record, pos, sy);
 		pos = setInt16(record, pos, sx);
-		pos = setInt16(record, pos, dw);
 		pos = setInt16(record, pos, dh);
+		pos = setInt16(record, pos, dw);
 		pos = setInt16(record, pos, dy);
 		pos = setInt16(record, pos, dx);
 		pos = setBytes(record, pos, image);
@@ -849,7 +878,7 @@ public class WmfGdi implements Gdi, WmfConstants {
 		byte[] record = new byte[10];
 		int pos = 0;
 		pos = setUint32(record, pos, record.length/2);
-		pos = setUint16(record, pos, RECORD_SET_TEXT_COLOR);
+		pos = setUint16(record, pos, RECORD_SET_TEXT_JUSTIFICATION);
 		pos = setInt16(record, pos, breakCount);
 		pos = setInt16(record, pos, breakExtra);
 		records.add(record);
@@ -906,8 +935,8 @@ public class WmfGdi implements Gdi, WmfConstants {
 		pos = setInt16(record, pos, sw);
 		pos = setInt16(record, pos, sy);
 		pos = setInt16(record, pos, sx);
-		pos = setInt16(record, pos, dw);
 		pos = setInt16(record, pos, dh);
+		pos = setInt16(record, pos, dw);
 		pos = setInt16(record, pos, dy);
 		pos = setInt16(record, pos, dx);
 		pos = setBytes(record, pos, image);
@@ -917,7 +946,7 @@ public class WmfGdi implements Gdi, WmfConstants {
 
 	public void stretchDIBits(int dx, int dy, int dw, int dh, int sx, int sy,
 			int sw, int sh, byte[] image, int usage, long rop) {
-		byte[] record = new byte[26 + (image.length + image.length%2)];
+		byte[] record = new byte[28 + (image.length + image.length%2)];
 		int pos = 0;
 		pos = setUint32(record, pos, record.length/2);
 		pos = setUint16(record, pos, RECORD_STRETCH_DIBITS);
@@ -927,8 +956,8 @@ public class WmfGdi implements Gdi, WmfConstants {
 		pos = setInt16(record, pos, sw);
 		pos = setInt16(record, pos, sy);
 		pos = setInt16(record, pos, sx);
-		pos = setInt16(record, pos, dw);
 		pos = setInt16(record, pos, dh);
+		pos = setInt16(record, pos, dw);
 		pos = setInt16(record, pos, dy);
 		pos = setInt16(record, pos, dx);
 		pos = setBytes(record, pos, image);
@@ -937,7 +966,7 @@ public class WmfGdi implements Gdi, WmfConstants {
 	}
 
 	public void textOut(int x, int y, byte[] text) {
-		byte[] record = new byte[10 + text.length + text.length%2];
+		byte[] record = new byte[12 + text.length + text.length%2];
 		int pos = 0;
 		pos = setUint32(record, pos, record.length/2);
 		pos = setUint16(record, pos, RECORD_TEXT_OUT);
@@ -961,7 +990,7 @@ public class WmfGdi implements Gdi, WmfConstants {
 				if (record.length > maxRecordSize) maxRecordSize = record.length;
 			}
 			
-			pos = setUint32(header, 6, size/2);
+			pos = setUint32(header, 6, size/2 + 3);
 			pos = setUint16(header, pos, objects.size());
 			pos = setUint32(header, pos, maxRecordSize / 2);
 		}
@@ -971,6 +1000,7 @@ public class WmfGdi implements Gdi, WmfConstants {
 		pos = setUint32(record, pos, record.length/2);
 		pos = setUint16(record, pos, 0x0000);
 		records.add(record);
+		closed = true;
 	}
 	
 	private int setByte(byte[] out, int pos, int value) {
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.gdi.wmf;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The header and the statistics of the records of a metafile, that are
+ * read without rendering it.
+ *
+ * read() reads only the headers. scan() also skips through the records to
+ * count them by the function number and to sum the bytes of the bitmaps.
+ * Both use a fixed amount of memory whatever the size of the file is, and
+ * skip the parameters of the records without reading them.
+ */
+public final class WmfInfo implements WmfConstants {
+	// the size of the stream buffer for the headers
+	private static final int HEADER_BUFFER_SIZE = 64;
+
+	private static final int SCAN_BUFFER_SIZE = 8 * 1024;
+
+	private boolean placeable;
+	private int left;
+	private int top;
+	private int right;
+	private int bottom;
+	private int dpi;
+	private int version;
+	private long fileSize;
+	private int objectCount;
+	private long maxRecordSize;
+
+	private boolean scanned = false;
+	private boolean truncated = false;
+	private long recordCount = 0;
+	private long dibBytes = 0;
+	private long[] histogram;
+
+	private WmfInfo(WmfRecordReader in) {
+		placeable = in.isPlaceable();
+		left = in.getLeft();
+		top = in.getTop();
+		right = in.getRight();
+		bottom = in.getBottom();
+		dpi = in.getDpi();
+		version = in.getVersion();
+		fileSize = in.getFileSize();
+		objectCount = in.getObjectCount();
+		maxRecordSize = in.getMaxRecordSize();
+	}
+
+	/**
+	 * Reads the headers of a metafile in a stream. The stream is not closed.
+	 *
+	 * @exception EOFException if the file ends in the header.
+	 * @exception WmfParseException if the file is empty or is not a metafile.
+	 */
+	public static WmfInfo read(InputStream in) throws IOException, WmfParseException {
+		WmfRecordReader reader = new WmfRecordReader(in, HEADER_BUFFER_SIZE);
+		reader.readHeader();
+		return new WmfInfo(reader);
+	}
+
+	/**
+	 * Reads the headers of a metafile file.
+	 *
+	 * @see #read(InputStream)
+	 */
+	public static WmfInfo read(Path path) throws IOException, WmfParseException {
+		InputStream in = Files.newInputStream(path);
+		try {
+			return read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads the headers of a metafile in a stream, and scans its records.
+	 * The stream is not closed. A file that ends before the end record is
+	 * not an error, but isTruncated() returns true.
+	 *
+	 * @exception EOFException if the file ends in the header.
+	 * @exception WmfParseException if the file is empty or is not a metafile.
+	 */
+	public static WmfInfo scan(InputStream in) throws IOException, WmfParseException {
+		return scan(new WmfRecordReader(in, SCAN_BUFFER_SIZE));
+	}
+
+	/**
+	 * Reads the headers of a metafile file, and scans its records.
+	 *
+	 * @see #scan(InputStream)
+	 */
+	public static WmfInfo scan(Path path) throws IOException, WmfParseException {
+		InputStream in = Files.newInputStream(path);
+		try {
+			return scan(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads the headers and scans the records of a reader that has not
+	 * been read yet.
+	 */
+	public static WmfInfo scan(WmfRecordReader in) throws IOException, WmfParseException {
+		in.readHeader();
+		WmfInfo info = new WmfInfo(in);
+		info.scanned = true;
+		info.histogram = new long[0x1000];
+		try {
+			while (in.next()) {
+				info.add(in.getId(), getDibSize(in));
+			}
+		} catch (EOFException e) {
+			info.truncated = true;
+		}
+		return info;
+	}
+
+	private void add(int id, int dibSize) {
+		if (id >= histogram.length) {
+			long[] array = new long[0x10000];
+			System.arraycopy(histogram, 0, array, 0, histogram.length);
+			histogram = array;
+		}
+		histogram[id]++;
+		recordCount++;
+		dibBytes += dibSize;
+	}
+
+	/**
+	 * Returns the number of the bytes of the bitmap in the current record,
+	 * that follow the fixed parameters as WmfParser reads them.
+	 */
+	private static int getDibSize(WmfRecordReader in) throws IOException {
+		int params;
+		switch (in.getId()) {
+			case RECORD_DIB_CREATE_PATTERN_BRUSH:
+				params = 4;
+				break;
+			case RECORD_BIT_BLT:
+				params = 16;
+				break;
+			case RECORD_DIB_BIT_BLT:
+				// the record has no bitmap if the height is zero.
+				in.skip(8);
+				if (in.readInt16() == 0) {
+					return 0;
+				}
+				params = 16;
+				break;
+			case RECORD_SET_DIBITS_TO_DEVICE:
+				params = 18;
+				break;
+			case RECORD_STRETCH_BLT:
+			case RECORD_DIB_STRETCH_BLT:
+				params = 20;
+				break;
+			case RECORD_STRETCH_DIBITS:
+				params = 22;
+				break;
+			default:
+				return 0;
+		}
+		return Math.max(in.getRemaining() + in.getPosition() - params, 0);
+	}
+
+	/**
+	 * Returns true if the file has the placeable header.
+	 */
+	public boolean isPlaceable() {
+		return placeable;
+	}
+
+	/**
+	 * Returns the left of the bounds in the placeable header.
+	 */
+	public int getLeft() {
+		return left;
+	}
+
+	public int getTop() {
+		return top;
+	}
+
+	public int getRight() {
+		return right;
+	}
+
+	public int getBottom() {
+		return bottom;
+	}
+
+	/**
+	 * Returns the units per inch in the placeable header.
+	 */
+	public int getDpi() {
+		return dpi;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the size of the file in words, as in the header.
+	 */
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	/**
+	 * Returns the number of the object slots used by the records.
+	 */
+	public int getObjectCount() {
+		return objectCount;
+	}
+
+	/**
+	 * Returns the size of the largest record in words, as in the header.
+	 */
+	public long getMaxRecordSize() {
+		return maxRecordSize;
+	}
+
+	/**
+	 * Returns true if the records have been scanned.
+	 */
+	public boolean isScanned() {
+		return scanned;
+	}
+
+	/**
+	 * Returns true if the file ended before the end record.
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * Returns the number of the scanned records, except the end record.
+	 */
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Returns the number of the scanned records of a function number, that
+	 * is one of WmfConstants.RECORD_*.
+	 */
+	public long getRecordCount(int id) {
+		if (histogram == null || id < 0 || id >= histogram.length) {
+			return 0;
+		}
+		return histogram[id];
+	}
+
+	/**
+	 * Returns the function numbers of the scanned records in ascending
+	 * order.
+	 */
+	public int[] getRecordIds() {
+		if (histogram == null) {
+			return new int[0];
+		}
+
+		int count = 0;
+		for (int i = 0; i < histogram.length; i++) {
+			if (histogram[i] > 0) count++;
+		}
+		int[] ids = new int[count];
+		count = 0;
+		for (int i = 0; i < histogram.length; i++) {
+			if (histogram[i] > 0) ids[count++] = i;
+		}
+		return ids;
+	}
+
+	/**
+	 * Returns the total number of the bytes of the bitmaps in the scanned
+	 * records.
+	 */
+	public long getDibBytes() {
+		return dibBytes;
+	}
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("WmfInfo[");
+		if (placeable) {
+			sb.append("bounds=(").append(left).append(", ").append(top).append(", ")
+				.append(right).append(", ").append(bottom).append("), dpi=").append(dpi).append(", ");
+		}
+		sb.append("version=0x").append(Integer.toHexString(version));
+		sb.append(", fileSize=").append(fileSize);
+		sb.append(", objectCount=").append(objectCount);
+		sb.append(", maxRecordSize=").append(maxRecordSize);
+		if (scanned) {
+			sb.append(", records=").append(recordCount);
+			sb.append(", dibBytes=").append(dibBytes);
+			if (truncated) sb.append(", truncated");
+		}
+		sb.append("]");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.gdi.wmf;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import net.arnx.wmf2svg.gdi.Gdi;
+import net.arnx.wmf2svg.io.BufferedDataInput;
+
+/**
+ * Parses a metafile that arrives in chunks, without blocking.
+ *
+ * Each call of feed() calls the gdi for the records that are complete, and
+ * keeps only the bytes of the last partial record until the next call.
+ * The records in the fed buffer are read in place, so it may be reused by
+ * the caller after feed() returns:
+ *
+ * <pre>
+ * WmfPushParser parser = new WmfPushParser(gdi);
+ * while (channel.read(buffer) != -1) {
+ *     buffer.flip();
+ *     parser.feed(buffer);
+ *     buffer.clear();
+ * }
+ * parser.finish();
+ * </pre>
+ *
+ * The gdi is called in the same way as WmfParser calls it. The bytes after
+ * the end record are ignored, and a truncated file ends without footer().
+ */
+public class WmfPushParser {
+	private final Gdi gdi;
+	private final WmfRecordReader record = new WmfRecordReader((BufferedDataInput)null);
+	private WmfParser.Context context;
+
+	private byte[] pending = new byte[64];
+	private int pendingLength = 0;
+
+	// the position of the next record in the file
+	private long position = 0;
+	private boolean fed = false;
+	private boolean ended = false;
+
+	public WmfPushParser(Gdi gdi) {
+		this.gdi = gdi;
+	}
+
+	/**
+	 * Parses the remaining bytes of a buffer, that follow the bytes fed
+	 * before. The buffer is read to its limit.
+	 *
+	 * @exception WmfParseException if the file is not a metafile.
+	 */
+	public void feed(ByteBuffer data) throws IOException, WmfParseException {
+		if (data.hasRemaining()) {
+			fed = true;
+		}
+
+		while (!ended && data.hasRemaining()) {
+			if (pendingLength > 0) {
+				// completes the partial record
+				int length = getLength(ByteBuffer.wrap(pending, 0, pendingLength));
+				int n = Math.min(((length < 0) ? 4 : length) - pendingLength, data.remaining());
+				if (pendingLength + n > pending.length) {
+					pending = Arrays.copyOf(pending, Math.max(pendingLength + n, pending.length * 2));
+				}
+				data.get(pending, pendingLength, n);
+				pendingLength += n;
+
+				if (length > 0 && pendingLength == length) {
+					pendingLength = 0;
+					process(ByteBuffer.wrap(pending, 0, length), true);
+				}
+				continue;
+			}
+
+			int length = getLength(data);
+			if (length < 0 || length > data.remaining()) {
+				int n = data.remaining();
+				if (n > pending.length) {
+					pending = new byte[Math.max(n, pending.length * 2)];
+				}
+				data.get(pending, 0, n);
+				pendingLength = n;
+				break;
+			}
+
+			ByteBuffer unit = data.slice();
+			unit.limit(length);
+			data.position(data.position() + length);
+			process(unit, false);
+		}
+
+		if (ended) {
+			data.position(data.limit());
+		}
+	}
+
+	/**
+	 * Ends the file. If the end record has not been fed, the file is
+	 * regarded as truncated and footer() is not called.
+	 *
+	 * @exception WmfParseException if nothing has been fed.
+	 */
+	public void finish() throws IOException, WmfParseException {
+		if (!fed) {
+			throw new WmfParseException("input file size is zero.");
+		}
+		pending = null;
+		pendingLength = 0;
+		ended = true;
+	}
+
+	/**
+	 * Returns true if the end record has been parsed, or the parse has been
+	 * finished.
+	 */
+	public boolean isEnded() {
+		return ended;
+	}
+
+	/**
+	 * Returns the number of the bytes of the header or the record at the
+	 * position of the buffer, or -1 if the buffer is too short to know it.
+	 */
+	private int getLength(ByteBuffer buf) throws WmfParseException {
+		if (buf.remaining() < 4) {
+			return -1;
+		}
+
+		long value = getUint32(buf, buf.position());
+		if (context == null) {
+			return (value == 0x9AC6CDD7L) ? 22 + 18 : 18;
+		}
+		if (value > Integer.MAX_VALUE / 2) {
+			throw new WmfParseException("invalid record size: " + value);
+		}
+		return Math.max((int)value * 2, 6);
+	}
+
+	private void process(ByteBuffer unit, boolean shared) throws IOException, WmfParseException {
+		long offset = position;
+		position += unit.remaining();
+
+		if (context == null) {
+			WmfRecordReader header = new WmfRecordReader(unit);
+			header.readHeader();
+			record.setHeader(header);
+			context = WmfParser.header(header, gdi);
+			return;
+		}
+
+		long size = getUint32(unit, unit.position());
+		int id = getUint16(unit, unit.position() + 4);
+		if (id == 0) {
+			ended = true;
+			gdi.footer();
+			return;
+		}
+
+		unit.position(unit.position() + 6);
+		if (WmfParser.isBitmapRecord(id)) {
+			// the bitmap is passed to the gdi as a slice of the record.
+			if (shared) {
+				pending = new byte[64];
+			} else {
+				byte[] copy = new byte[unit.remaining()];
+				unit.get(copy);
+				unit = ByteBuffer.wrap(copy);
+			}
+		}
+
+		record.setRecord(offset, size, id, new BufferedDataInput(unit, ByteOrder.LITTLE_ENDIAN));
+		try {
+			WmfParser.parseRecord(record, gdi, context);
+		} catch (EOFException e) {
+			// the record is shorter than its parameters, as in a truncated file.
+			ended = true;
+		}
+	}
+
+	private static long getUint32(ByteBuffer buf, int index) {
+		return (buf.get(index) & 0xFFL)
+			| (buf.get(index + 1) & 0xFFL) << 8
+			| (buf.get(index + 2) & 0xFFL) << 16
+			| (buf.get(index + 3) & 0xFFL) << 24;
+	}
+
+	private static int getUint16(ByteBuffer buf, int index) {
+		return (buf.get(index) & 0xFF) | (buf.get(index + 1) & 0xFF) << 8;
+	}
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.gdi.wmf;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import net.arnx.wmf2svg.io.BufferedDataInput;
+
+/**
+ * Reads the records of a metafile one by one.
+ *
+ * The header is read by the first call of next() or readHeader(). Each
+ * call of next() moves to the next record and skips the rest of the
+ * current one, so a caller reads only the parameters it needs:
+ *
+ * <pre>
+ * WmfRecordReader reader = new WmfRecordReader(data);
+ * while (reader.next()) {
+ *     if (reader.getId() == WmfConstants.RECORD_LINE_TO) {
+ *         int y = reader.readInt16();
+ *         int x = reader.readInt16();
+ *     }
+ * }
+ * </pre>
+ *
+ * The parameters are read from the buffer of the input in place, and
+ * nothing is allocated for a record unless readBytes or readBuffer is
+ * called. The reads are not checked against the end of the record, in the
+ * same way as WmfParser has always read the files.
+ */
+public class WmfRecordReader implements WmfConstants {
+	private BufferedDataInput in;
+
+	private boolean headerRead = false;
+	private boolean placeable = false;
+	private int left;
+	private int top;
+	private int right;
+	private int bottom;
+	private int dpi;
+	private int version;
+	private long fileSize;
+	private int objectCount;
+	private long maxRecordSize;
+
+	private long offset = -1;
+	private long size = 0;
+	private int id = -1;
+	private boolean ended = false;
+
+	public WmfRecordReader(InputStream in) {
+		this(new BufferedDataInput(in, ByteOrder.LITTLE_ENDIAN));
+	}
+
+	/**
+	 * Create a reader of a metafile in a stream, with a buffer of the
+	 * specified size. A small buffer reads few bytes more than needed, when
+	 * only the header is read or the records are mostly skipped.
+	 */
+	public WmfRecordReader(InputStream in, int size) {
+		this(new BufferedDataInput(in, ByteOrder.LITTLE_ENDIAN, size));
+	}
+
+	/**
+	 * Create a reader of a metafile in a byte array. The array is not copied.
+	 */
+	public WmfRecordReader(byte[] data) {
+		this(new BufferedDataInput(data, ByteOrder.LITTLE_ENDIAN));
+	}
+
+	/**
+	 * Create a reader of a metafile in the remaining bytes of a buffer. The
+	 * position of the buffer is not changed.
+	 */
+	public WmfRecordReader(ByteBuffer data) {
+		this(new BufferedDataInput(data, ByteOrder.LITTLE_ENDIAN));
+	}
+
+	/**
+	 * Create a reader of a metafile file by mapping it into memory.
+	 */
+	public WmfRecordReader(Path path) throws IOException {
+		this(map(path));
+	}
+
+	WmfRecordReader(BufferedDataInput in) {
+		this.in = in;
+	}
+
+	/**
+	 * Copies the header of another reader, that has read it.
+	 */
+	void setHeader(WmfRecordReader header) {
+		placeable = header.placeable;
+		left = header.left;
+		top = header.top;
+		right = header.right;
+		bottom = header.bottom;
+		dpi = header.dpi;
+		version = header.version;
+		fileSize = header.fileSize;
+		objectCount = header.objectCount;
+		maxRecordSize = header.maxRecordSize;
+		headerRead = true;
+	}
+
+	/**
+	 * Sets the current record, whose parameters are read from the input.
+	 */
+	void setRecord(long offset, long size, int id, BufferedDataInput in) {
+		this.offset = offset;
+		this.size = size;
+		this.id = id;
+		this.in = in;
+	}
+
+	private static ByteBuffer map(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Reads the placeable header if any, and the metafile header. It does
+	 * nothing if the header has been read.
+	 *
+	 * @exception EOFException if the file ends in the header.
+	 * @exception WmfParseException if the file is empty or is not a metafile.
+	 */
+	public void readHeader() throws IOException, WmfParseException {
+		if (headerRead) {
+			return;
+		}
+
+		long key;
+		try {
+			key = in.readUint32();
+		} catch (EOFException e) {
+			throw new WmfParseException("input file size is zero.");
+		}
+
+		int mtType = 0;
+		int mtHeaderSize = 0;
+		if (key == 0x9AC6CDD7L) {
+			int hmf = in.readInt16();
+			left = in.readInt16();
+			top = in.readInt16();
+			right = in.readInt16();
+			bottom = in.readInt16();
+			dpi = in.readUint16();
+			long reserved = in.readUint32();
+			int checksum = in.readUint16();
+			placeable = true;
+
+			mtType = in.readUint16();
+			mtHeaderSize = in.readUint16();
+		} else {
+			mtType = (int)(key & 0x0000FFFF);
+			mtHeaderSize = (int)((key & 0xFFFF0000) >> 16);
+		}
+
+		version = in.readUint16();
+		fileSize = in.readUint32();
+		objectCount = in.readUint16();
+		maxRecordSize = in.readUint32();
+		int mtNoParameters = in.readUint16();
+
+		if (mtType != 1 || mtHeaderSize != 9) {
+			throw new WmfParseException("invalid file format.");
+		}
+		headerRead = true;
+	}
+
+	/**
+	 * Returns true if the file has the placeable header.
+	 */
+	public boolean isPlaceable() {
+		return placeable;
+	}
+
+	/**
+	 * Returns the left of the bounds in the placeable header.
+	 */
+	public int getLeft() {
+		return left;
+	}
+
+	public int getTop() {
+		return top;
+	}
+
+	public int getRight() {
+		return right;
+	}
+
+	public int getBottom() {
+		return bottom;
+	}
+
+	/**
+	 * Returns the units per inch in the placeable header.
+	 */
+	public int getDpi() {
+		return dpi;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the size of the file in words, as in the header.
+	 */
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	/**
+	 * Returns the number of the object slots used by the records.
+	 */
+	public int getObjectCount() {
+		return objectCount;
+	}
+
+	/**
+	 * Returns the size of the largest record in words, as in the header.
+	 */
+	public long getMaxRecordSize() {
+		return maxRecordSize;
+	}
+
+	/**
+	 * Moves to the next record. The rest of the current record is skipped.
+	 *
+	 * @return false if the end record is reached.
+	 * @exception EOFException if the file ends before the end record.
+	 * @exception WmfParseException if the size of the record is invalid.
+	 */
+	public boolean next() throws IOException, WmfParseException {
+		if (!headerRead) {
+			readHeader();
+		}
+		if (ended) {
+			return false;
+		}
+
+		if (id != -1) {
+			in.skip(getRemaining());
+		}
+
+		offset = in.getPosition();
+		size = in.readUint32();
+		id = in.readUint16();
+		in.setCount(0);
+
+		if (id == 0) {
+			ended = true;
+			return false;
+		}
+		
+		// the parameters must fit in int, and the size includes itself.
+		if (size < 3 || size * 2 - 6 > Integer.MAX_VALUE) {
+			throw new WmfParseException("invalid record size: " + size);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the function number of the current record, that is one of
+	 * WmfConstants.RECORD_*.
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the size of the current record in words, including the size
+	 * and the function number.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the position of the current record in bytes from the
+	 * beginning of the file.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Returns the number of the bytes of the parameters read or skipped.
+	 */
+	public int getPosition() {
+		return in.getCount();
+	}
+
+	/**
+	 * Returns the number of the bytes of the parameters not read yet.
+	 */
+	public int getRemaining() {
+		// next() has checked that the parameters fit in int.
+		return (int)(size * 2 - 6 - in.getCount());
+	}
+
+	public int readByte() throws IOException {
+		return in.readByte();
+	}
+
+	public int readInt16() throws IOException {
+		return in.readInt16();
+	}
+
+	public int readUint16() throws IOException {
+		return in.readUint16();
+	}
+
+	public int readInt32() throws IOException {
+		return in.readInt32();
+	}
+
+	public long readUint32() throws IOException {
+		return in.readUint32();
+	}
+
+	public byte[] readBytes(int n) throws IOException {
+		return in.readBytes(n);
+	}
+
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		in.readFully(b, off, len);
+	}
+
+	/**
+	 * Reads the bytes as a buffer, that shares the content with the input
+	 * when it is a byte array or a ByteBuffer.
+	 */
+	public ByteBuffer readBuffer(int n) throws IOException {
+		return in.readBuffer(n);
+	}
+
+	public void skip(int n) throws IOException {
+		in.skip(n);
+	}
+
+	public void close() {
+		in.close();
+	}
+}
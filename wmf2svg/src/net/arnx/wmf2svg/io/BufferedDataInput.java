@@ -0,0 +1,327 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A {@link DataInput} equivalent that decodes the fields from a byte window.
+ *
+ * The window is the whole data when this instance is created from a byte
+ * array or a ByteBuffer. When it is created from an input stream, the window
+ * is an internal buffer that is refilled by bulk reads, so the stream does not
+ * need to be buffered and is never read per field.
+ */
+public class BufferedDataInput {
+	private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private InputStream in;
+	private ByteBuffer buf;
+
+	// stream position of the head of the window
+	private long offset = 0;
+
+	// stream position where the count is zero
+	private long mark = 0;
+
+	/**
+	 * Create a BufferedDataInput class instance.
+	 *
+	 * @param in the input stream. It need not be buffered.
+	 * @param endian the endian of the input stream
+	 **/
+	public BufferedDataInput(InputStream in, ByteOrder endian) {
+		this(in, endian, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Create a BufferedDataInput class instance.
+	 *
+	 * @param in the input stream. It need not be buffered.
+	 * @param endian the endian of the input stream
+	 * @param size the size of the internal buffer.
+	 **/
+	public BufferedDataInput(InputStream in, ByteOrder endian, int size) {
+		if (size < 8) {
+			throw new IllegalArgumentException("size: " + size);
+		}
+		this.in = in;
+		this.buf = ByteBuffer.wrap(new byte[size]);
+		this.buf.limit(0);
+		this.buf.order(checkEndian(endian));
+	}
+
+	/**
+	 * Create a BufferedDataInput class instance that reads a byte array.
+	 *
+	 * @param data the data to read. It is not copied.
+	 * @param endian the endian of the data
+	 **/
+	public BufferedDataInput(byte[] data, ByteOrder endian) {
+		this(ByteBuffer.wrap(data), endian);
+	}
+
+	/**
+	 * Create a BufferedDataInput class instance that reads the remaining
+	 * bytes of a buffer. The position of the buffer is not changed.
+	 *
+	 * @param data the data to read. It is not copied.
+	 * @param endian the endian of the data
+	 **/
+	public BufferedDataInput(ByteBuffer data, ByteOrder endian) {
+		this.buf = data.slice();
+		this.buf.order(checkEndian(endian));
+	}
+
+	private static ByteOrder checkEndian(ByteOrder endian) {
+		if (endian != ByteOrder.BIG_ENDIAN && endian != ByteOrder.LITTLE_ENDIAN) {
+			throw new IllegalArgumentException();
+		}
+		return endian;
+	}
+
+	/**
+	 * Reads the next one byte of this input as a unsigned 8-bit integer.
+	 *
+	 * @return the <code>int</code> value as a unsigned 8-bit integer.
+	 * @exception IOException if an I/O error occurs.
+	 * @exception EOFException if this input reaches the end before reading all the bytes.
+	 **/
+	public int readByte() throws IOException, EOFException {
+		if (!buf.hasRemaining()) fill(1);
+		return 0xff & buf.get();
+	}
+
+	/**
+	 * Reads the next two bytes of this input as a signed 16-bit integer.
+	 *
+	 * @return the <code>int</code> value as a signed 16-bit integer.
+	 * @exception IOException if an I/O error occurs.
+	 * @exception EOFException if this input reaches the end before reading all the bytes.
+	 **/
+	public int readInt16() throws IOException, EOFException {
+		if (buf.remaining() < 2) fill(2);
+		return buf.getShort();
+	}
+
+	/**
+	 * Reads the next four bytes of this input as a signed 32-bit integer.
+	 *
+	 * @return the <code>int</code> value as a signed 32-bit integer.
+	 * @exception IOException if an I/O error occurs.
+	 * @exception EOFException if this input reaches the end before reading all the bytes.
+	 **/
+	public int readInt32() throws IOException, EOFException {
+		if (buf.remaining() < 4) fill(4);
+		return buf.getInt();
+	}
+
+	/**
+	 * Reads the next two bytes of this input as a unsigned 16-bit integer.
+	 *
+	 * @return the <code>int</code> value as a unsigned 16-bit integer.
+	 * @exception IOException if an I/O error occurs.
+	 * @exception EOFException if this input reaches the end before reading all the bytes.
+	 **/
+	public int readUint16() throws IOException, EOFException {
+		if (buf.remaining() < 2) fill(2);
+		return 0xffff & buf.getShort();
+	}
+
+	/**
+	 * Reads the next four bytes of this input as a unsigned 32-bit integer.
+	 *
+	 * @return the <code>long</code> value as a unsigned 32-bit integer.
+	 * @exception IOException if an I/O error occurs.
+	 * @exception EOFException if this input reaches the end before reading all the bytes.
+	 **/
+	public long readUint32() throws IOException, EOFException {
+		if (buf.remaining() < 4) fill(4);
+		return 0xffffffffL & buf.getInt();
+	}
+
+	/**
+	 * Reads the next n bytes of this input into a new array.
+	 *
+	 * @param n the number of bytes to read.
+	 * @return the read bytes.
+	 * @exception IOException if an I/O error occurs.
+	 * @exception EOFException if this input reaches the end before reading all the bytes.
+	 **/
+	public byte[] readBytes(int n) throws IOException, EOFException {
+		if (n < 0) {
+			throw new EOFException();
+		}
+
+		byte[] array = new byte[n];
+		readFully(array, 0, n);
+		return array;
+	}
+
+	/**
+	 * Reads the next len bytes of this input into an array.
+	 *
+	 * @param b the array to store the bytes.
+	 * @param off the start offset in the array.
+	 * @param len the number of bytes to read.
+	 * @exception IOException if an I/O error occurs.
+	 * @exception EOFException if this input reaches the end before reading all the bytes.
+	 **/
+	public void readFully(byte[] b, int off, int len) throws IOException, EOFException {
+		if (len < 0) {
+			throw new EOFException();
+		}
+
+		int n = Math.min(len, buf.remaining());
+		buf.get(b, off, n);
+		if (n < len) {
+			if (in == null) throw new EOFException();
+
+			offset += buf.limit();
+			buf.clear().limit(0);
+			while (n < len) {
+				int read = in.read(b, off + n, len - n);
+				if (read == -1) throw new EOFException();
+				offset += read;
+				n += read;
+			}
+		}
+	}
+
+	/**
+	 * Reads the next n bytes of this input as a buffer. When this instance reads
+	 * a byte array or a ByteBuffer, the result is a slice that shares the
+	 * content with it and no bytes are copied. The result is big endian as
+	 * any new buffer is.
+	 *
+	 * @param n the number of bytes to read.
+	 * @return the buffer that has n bytes remaining.
+	 * @exception IOException if an I/O error occurs.
+	 * @exception EOFException if this input reaches the end before reading all the bytes.
+	 **/
+	public ByteBuffer readBuffer(int n) throws IOException, EOFException {
+		if (in != null) {
+			return ByteBuffer.wrap(readBytes(n));
+		}
+
+		if (n < 0 || n > buf.remaining()) {
+			buf.position(buf.limit());
+			throw new EOFException();
+		}
+
+		ByteBuffer slice = buf.slice();
+		slice.limit(n);
+		buf.position(buf.position() + n);
+		return slice;
+	}
+
+	/**
+	 * Skips over the next n bytes of this input. The bytes in the window are
+	 * skipped without reading them.
+	 *
+	 * @param n the number of bytes to skip.
+	 * @exception IOException if an I/O error occurs.
+	 * @exception EOFException if this input reaches the end before skipping all the bytes.
+	 **/
+	public void skip(long n) throws IOException, EOFException {
+		if (n <= 0) {
+			return;
+		}
+
+		if (n <= buf.remaining()) {
+			buf.position(buf.position() + (int)n);
+			return;
+		}
+
+		if (in == null) {
+			buf.position(buf.limit());
+			throw new EOFException();
+		}
+
+		n -= buf.remaining();
+		offset += buf.limit();
+		buf.clear().limit(0);
+		while (n > 0) {
+			long skipped = in.skip(n);
+			if (skipped <= 0) {
+				if (in.read() == -1) throw new EOFException();
+				skipped = 1;
+			}
+			offset += skipped;
+			n -= skipped;
+		}
+	}
+
+	private void fill(int n) throws IOException, EOFException {
+		if (in == null) {
+			throw new EOFException();
+		}
+
+		offset += buf.position();
+		buf.compact();
+		byte[] array = buf.array();
+		while (buf.position() < n) {
+			int read = in.read(array, buf.position(), buf.remaining());
+			if (read == -1) {
+				buf.flip();
+				throw new EOFException();
+			}
+			buf.position(buf.position() + read);
+		}
+		buf.flip();
+	}
+
+	/**
+	 * Returns the number of bytes read or skipped from the beginning.
+	 *
+	 * @return the position.
+	 **/
+	public long getPosition() {
+		return offset + buf.position();
+	}
+
+	/**
+	 * Sets the number of bytes that is regarded as read.
+	 * Following reads and skips are counted from the value.
+	 *
+	 * @param count the new count.
+	 **/
+	public void setCount(int count) {
+		this.mark = offset + buf.position() - count;
+	}
+
+	/**
+	 * Returns the number of bytes read or skipped since the last setCount.
+	 *
+	 * @return the count.
+	 **/
+	public int getCount() {
+		return (int)(offset + buf.position() - mark);
+	}
+
+	public void close() {
+		if (in == null) {
+			return;
+		}
+		try {
+			in.close();
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
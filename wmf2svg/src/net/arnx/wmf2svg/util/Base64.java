@@ -15,6 +15,9 @@
  */
 package net.arnx.wmf2svg.util;
 
+import java.io.IOException;
+import java.io.Writer;
+
 /**
  * @author Hidekatsu Izuno
  */
@@ -30,44 +33,63 @@ public class Base64 {
 		'4', '5', '6', '7', '8', '9', '+', '/' 
 	};
 
+	private static final int CHUNK_SIZE = 3 * 1024;
+
 	public static String encode(byte[] data) {
-		char[] buffer = null;
+		char[] buffer = new char[(data.length + 2) / 3 * 4];
+		encode(data, 0, data.length, buffer, 0);
+		return new String(buffer);
+	}
 
-		if (data.length % 3 == 0) {
-			buffer = new char[data.length / 3 * 4];
-		} else {
-			buffer = new char[(data.length / 3 + 1) * 4];
+	/**
+	 * Encodes the data to a writer by chunks, so that the whole encoded text
+	 * is never held in memory.
+	 */
+	public static void encode(byte[] data, Writer writer) throws IOException {
+		char[] buffer = new char[CHUNK_SIZE / 3 * 4];
+		for (int i = 0; i < data.length; i += CHUNK_SIZE) {
+			int len = encode(data, i, Math.min(CHUNK_SIZE, data.length - i), buffer, 0);
+			writer.write(buffer, 0, len);
 		}
+	}
 
-		int buf = 0;
-		for (int i = 0; i < data.length; i++) {
-			switch (i % 3) {
-				case 0 :
-					buffer[i / 3 * 4] = ENCODE_DATA[(data[i] & 0xFC) >> 2];
-					buf = (data[i] & 0x03) << 4;
-					if (i + 1 == data.length) {
-						buffer[i / 3 * 4 + 1] = ENCODE_DATA[buf];
-						buffer[i / 3 * 4 + 2] = '=';
-						buffer[i / 3 * 4 + 3] = '=';
-					}
-					break;
-				case 1 :
-					buf += (data[i] & 0xF0) >> 4;
-					buffer[i / 3 * 4 + 1] = ENCODE_DATA[buf];
-					buf = (data[i] & 0x0F) << 2;
-					if (i + 1 == data.length) {
-						buffer[i / 3 * 4 + 2] = ENCODE_DATA[buf];
-						buffer[i / 3 * 4 + 3] = '=';
-					}
-					break;
-				case 2 :
-					buf += (data[i] & 0xC0) >> 6;
-					buffer[i / 3 * 4 + 2] = ENCODE_DATA[buf];
-					buffer[i / 3 * 4 + 3] = ENCODE_DATA[data[i] & 0x3F];
-					break;
-			}
+	/**
+	 * Encodes the data into a char array. The padding is added only at the
+	 * end of the data, so a long data can be encoded by chunks whose size
+	 * is a multiple of three.
+	 *
+	 * @return the position of the buffer after the last encoded char.
+	 */
+	public static int encode(byte[] data, int offset, int length, char[] buffer, int pos) {
+		int end = offset + length - length % 3;
+		for (int i = offset; i < end; i += 3) {
+			int bits = ((data[i] & 0xFF) << 16) | ((data[i + 1] & 0xFF) << 8) | (data[i + 2] & 0xFF);
+			buffer[pos++] = ENCODE_DATA[bits >>> 18];
+			buffer[pos++] = ENCODE_DATA[(bits >>> 12) & 0x3F];
+			buffer[pos++] = ENCODE_DATA[(bits >>> 6) & 0x3F];
+			buffer[pos++] = ENCODE_DATA[bits & 0x3F];
 		}
 
-		return new String(buffer);
+		switch (length % 3) {
+			case 1 :
+				{
+					int bits = (data[end] & 0xFF) << 16;
+					buffer[pos++] = ENCODE_DATA[bits >>> 18];
+					buffer[pos++] = ENCODE_DATA[(bits >>> 12) & 0x3F];
+					buffer[pos++] = '=';
+					buffer[pos++] = '=';
+				}
+				break;
+			case 2 :
+				{
+					int bits = ((data[end] & 0xFF) << 16) | ((data[end + 1] & 0xFF) << 8);
+					buffer[pos++] = ENCODE_DATA[bits >>> 18];
+					buffer[pos++] = ENCODE_DATA[(bits >>> 12) & 0x3F];
+					buffer[pos++] = ENCODE_DATA[(bits >>> 6) & 0x3F];
+					buffer[pos++] = '=';
+				}
+				break;
+		}
+		return pos;
 	}
 }
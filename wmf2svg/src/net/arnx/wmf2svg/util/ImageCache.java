@@ -0,0 +1,135 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of encoded images, bounded by the total size of
+ * the images in bytes.
+ *
+ * This class is thread safe, so one instance can be shared by the converters
+ * running on many threads. The cached arrays are shared as they are, so they
+ * must not be modified.
+ */
+public class ImageCache {
+	private long maxSize;
+	private long size = 0;
+
+	private LinkedHashMap<String, byte[]> map = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long evictionCount = 0;
+
+	/**
+	 * Create a ImageCache class instance.
+	 *
+	 * @param maxSize the maximum total size of the cached images in bytes.
+	 **/
+	public ImageCache(long maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize: " + maxSize);
+		}
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns the cached image.
+	 *
+	 * @param key the key that identifies the source image and the conversion.
+	 * @return the image, or null if it is not cached.
+	 **/
+	public synchronized byte[] get(String key) {
+		byte[] image = map.get(key);
+		if (image != null) {
+			hitCount++;
+		} else {
+			missCount++;
+		}
+		return image;
+	}
+
+	/**
+	 * Caches an image. The least recently used images are evicted until the
+	 * total size fits in the maximum size. An image larger than the maximum
+	 * size is not cached.
+	 *
+	 * @param key the key that identifies the source image and the conversion.
+	 * @param image the image.
+	 **/
+	public synchronized void put(String key, byte[] image) {
+		if (image.length > maxSize) {
+			return;
+		}
+
+		byte[] old = map.put(key, image);
+		if (old != null) {
+			size -= old.length;
+		}
+		size += image.length;
+
+		Iterator<Map.Entry<String, byte[]>> i = map.entrySet().iterator();
+		while (size > maxSize && i.hasNext()) {
+			Map.Entry<String, byte[]> entry = i.next();
+			if (entry.getKey().equals(key)) {
+				continue;
+			}
+			size -= entry.getValue().length;
+			i.remove();
+			evictionCount++;
+		}
+	}
+
+	public synchronized void clear() {
+		map.clear();
+		size = 0;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Returns the total size of the cached images in bytes.
+	 **/
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public synchronized int getCount() {
+		return map.size();
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	public String toString() {
+		return "ImageCache [size=" + getSize() + ", maxSize=" + maxSize + ", count=" + getCount()
+			+ ", hit=" + getHitCount() + ", miss=" + getMissCount() + ", eviction=" + getEvictionCount() + "]";
+	}
+}
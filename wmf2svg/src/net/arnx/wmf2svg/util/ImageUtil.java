@@ -54,10 +54,12 @@ public class ImageUtil {
 			try {
 				// convert to 24bit color
 				BufferedImage bufferedImage = ImageIO.read(new ByteArrayInputStream(image));
-				BufferedImage dst = new BufferedImage(bufferedImage.getWidth(), bufferedImage.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
-				ColorConvertOp colorConvert = new ColorConvertOp(dst.getColorModel().getColorSpace(), null);
-				colorConvert.filter(bufferedImage, dst);
-				bufferedImage = dst;
+				if (bufferedImage.getType() != BufferedImage.TYPE_3BYTE_BGR) {
+					BufferedImage dst = new BufferedImage(bufferedImage.getWidth(), bufferedImage.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+					ColorConvertOp colorConvert = new ColorConvertOp(dst.getColorModel().getColorSpace(), null);
+					colorConvert.filter(bufferedImage, dst);
+					bufferedImage = dst;
+				}
 				
 				if (reverse) {
 					DataBuffer srcData = bufferedImage.getRaster().getDataBuffer();
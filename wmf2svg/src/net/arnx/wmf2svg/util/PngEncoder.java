@@ -0,0 +1,255 @@
+/*
+ * Copyright 2007-2012 Hidekatsu Izuno, Shunsuke Mori
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package net.arnx.wmf2svg.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import net.arnx.wmf2svg.gdi.Dib;
+
+/**
+ * Encodes a device independent bitmap to PNG without decoding it to an image.
+ *
+ * 1, 4 and 8 bit bitmaps are written as indexed color PNG whose scan lines are
+ * the same bytes as the bitmap. 24 and 32 bit bitmaps are written as 8 bit RGB.
+ * The scan lines are read in the output order, so that flipping the image
+ * vertically costs nothing.
+ */
+public class PngEncoder {
+	private static final byte[] SIGNATURE = {
+		(byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'
+	};
+
+	private static final int COLOR_TYPE_RGB = 2;
+	private static final int COLOR_TYPE_INDEXED = 3;
+
+	private static final int CHUNK_SIZE = 32 * 1024;
+
+	private PngEncoder() {
+	}
+
+	/**
+	 * Returns true if the bitmap can be encoded by this class. The others
+	 * (16 bit, bit fields, run length encoded and so on) have to be converted
+	 * by {@link ImageUtil}.
+	 */
+	public static boolean isSupported(Dib dib) {
+		if (dib.getWidth() <= 0 || dib.getHeight() <= 0 || dib.getPlanes() != 1) {
+			return false;
+		}
+
+		switch (dib.getBitCount()) {
+		case 1:
+		case 4:
+		case 8:
+		case 24:
+		case 32:
+			break;
+		default:
+			return false;
+		}
+
+		if (dib.getCompression() != Dib.BI_RGB) {
+			return false;
+		}
+
+		// a broken header must not make the rows larger than the data.
+		long stride = dib.getStride();
+		if (stride > dib.getLength()) {
+			return false;
+		}
+		long size = dib.getBitsOffset() + stride * dib.getHeight();
+		return size <= dib.getLength();
+	}
+
+	/**
+	 * Encodes the bitmap to PNG.
+	 *
+	 * @param dib the bitmap. It must be supported by {@link #isSupported(Dib)}.
+	 * @param reverse if true, the image is flipped vertically.
+	 * @return the PNG data.
+	 */
+	public static byte[] encode(Dib dib, boolean reverse) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(dib.getLength() / 2 + 1024);
+		try {
+			encode(dib, reverse, out);
+		} catch (IOException e) {
+			// never occurred.
+			throw new IllegalStateException(e);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Encodes the bitmap to PNG and writes it to a stream.
+	 *
+	 * @param dib the bitmap. It must be supported by {@link #isSupported(Dib)}.
+	 * @param reverse if true, the image is flipped vertically.
+	 * @param out the output stream.
+	 */
+	public static void encode(Dib dib, boolean reverse, OutputStream out) throws IOException {
+		if (!isSupported(dib)) {
+			throw new IllegalArgumentException("unsupported bitmap: " + dib);
+		}
+
+		int width = dib.getWidth();
+		int height = dib.getHeight();
+		int bitCount = dib.getBitCount();
+		boolean indexed = (bitCount <= 8);
+
+		ChunkWriter writer = new ChunkWriter(out);
+		out.write(SIGNATURE);
+
+		byte[] header = new byte[13];
+		setInt(header, 0, width);
+		setInt(header, 4, height);
+		header[8] = (byte)(indexed ? bitCount : 8);
+		header[9] = (byte)(indexed ? COLOR_TYPE_INDEXED : COLOR_TYPE_RGB);
+		header[10] = 0; // deflate
+		header[11] = 0; // adaptive filtering
+		header[12] = 0; // no interlace
+		writer.writeChunk("IHDR", header, header.length);
+
+		ByteBuffer src = dib.getBuffer();
+		// the sizes fit in int, as isSupported() has checked them with the data.
+		int base = src.position() + (int)dib.getBitsOffset();
+		int stride = (int)dib.getStride();
+		int rowBytes = indexed ? (int)(((long)width * bitCount + 7) / 8) : width * 3;
+
+		if (indexed) {
+			// all the indexes must be in the palette, so it is filled up with black.
+			int colorCount = Math.min(dib.getColorCount(), 1 << bitCount);
+			int paletteSize = (bitCount == 8) ? maxIndex(src, base, stride, rowBytes, height) + 1 : (1 << bitCount);
+			byte[] palette = new byte[paletteSize * 3];
+			for (int i = 0; i < colorCount && i < paletteSize; i++) {
+				int color = dib.getColor(i);
+				palette[i * 3] = (byte)(color >> 16);
+				palette[i * 3 + 1] = (byte)(color >> 8);
+				palette[i * 3 + 2] = (byte)color;
+			}
+			writer.writeChunk("PLTE", palette, palette.length);
+		}
+
+		// the first byte of each row is the filter type, that is always none.
+		byte[] row = new byte[1 + rowBytes];
+		byte[] line = indexed ? null : new byte[width * (bitCount / 8)];
+		boolean downward = (dib.isTopDown() != reverse);
+
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+		try {
+			for (int y = 0; y < height; y++) {
+				int pos = base + stride * (downward ? y : height - 1 - y);
+				src.position(pos);
+				if (indexed) {
+					src.get(row, 1, rowBytes);
+				} else {
+					src.get(line, 0, line.length);
+					int step = bitCount / 8;
+					for (int i = 0, j = 1; i < line.length; i += step, j += 3) {
+						row[j] = line[i + 2];
+						row[j + 1] = line[i + 1];
+						row[j + 2] = line[i];
+					}
+				}
+				deflater.setInput(row, 0, row.length);
+				while (!deflater.needsInput()) {
+					writer.deflate(deflater);
+				}
+			}
+			deflater.finish();
+			while (!deflater.finished()) {
+				writer.deflate(deflater);
+			}
+			writer.flushData();
+		} finally {
+			deflater.end();
+		}
+
+		writer.writeChunk("IEND", new byte[0], 0);
+	}
+
+	/**
+	 * Returns the largest index used in a 8 bit bitmap, so that the palette
+	 * need not have the unused entries.
+	 */
+	private static int maxIndex(ByteBuffer src, int base, int stride, int rowBytes, int height) {
+		int max = 0;
+		for (int y = 0; y < height && max < 255; y++) {
+			int pos = base + stride * y;
+			for (int i = 0; i < rowBytes; i++) {
+				int index = src.get(pos + i) & 0xFF;
+				if (index > max) max = index;
+			}
+		}
+		return max;
+	}
+
+	private static void setInt(byte[] data, int pos, int value) {
+		data[pos] = (byte)(value >>> 24);
+		data[pos + 1] = (byte)(value >>> 16);
+		data[pos + 2] = (byte)(value >>> 8);
+		data[pos + 3] = (byte)value;
+	}
+
+	private static class ChunkWriter {
+		private OutputStream out;
+		private CRC32 crc = new CRC32();
+		private byte[] buf = new byte[8];
+
+		private byte[] data = new byte[CHUNK_SIZE];
+		private int length = 0;
+
+		public ChunkWriter(OutputStream out) {
+			this.out = out;
+		}
+
+		/**
+		 * Deflates into the data buffer, and writes an IDAT chunk when it is full.
+		 */
+		public void deflate(Deflater deflater) throws IOException {
+			length += deflater.deflate(data, length, data.length - length);
+			if (length == data.length) {
+				flushData();
+			}
+		}
+
+		public void flushData() throws IOException {
+			if (length > 0) {
+				writeChunk("IDAT", data, length);
+				length = 0;
+			}
+		}
+
+		public void writeChunk(String type, byte[] data, int length) throws IOException {
+			setInt(buf, 0, length);
+			for (int i = 0; i < 4; i++) {
+				buf[4 + i] = (byte)type.charAt(i);
+			}
+			out.write(buf, 0, 8);
+			out.write(data, 0, length);
+
+			crc.reset();
+			crc.update(buf, 4, 4);
+			crc.update(data, 0, length);
+			setInt(buf, 0, (int)crc.getValue());
+			out.write(buf, 0, 4);
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package net.arnx.wmf2svg.gdi;
+
+import junit.framework.TestCase;
+
+public class RegionTest extends TestCase {
+	public void testRectangle() {
+		Region rgn = new Region(10, 20, 0, 0);
+		assertEquals(GdiRegion.SIMPLEREGION, rgn.getType());
+		assertEquals(0, rgn.getLeft());
+		assertEquals(0, rgn.getTop());
+		assertEquals(10, rgn.getRight());
+		assertEquals(20, rgn.getBottom());
+		
+		assertTrue(new Region(0, 0, 0, 10).isEmpty());
+		assertEquals(GdiRegion.NULLREGION, Region.EMPTY.getType());
+	}
+	
+	public void testSubtract() {
+		Region rgn = new Region(0, 0, 100, 100)
+			.subtract(new Region(10, 10, 20, 20))
+			.subtract(new Region(30, 10, 40, 20));
+		assertEquals(GdiRegion.COMPLEXREGION, rgn.getType());
+		assertEquals(5, rgn.getRectCount());
+		assertTrue(rgn.contains(0, 0, 100, 10));
+		assertTrue(rgn.contains(20, 0, 30, 100));
+		assertFalse(rgn.contains(0, 0, 100, 11));
+		assertFalse(rgn.intersects(10, 10, 20, 20));
+		assertTrue(rgn.intersects(10, 10, 21, 20));
+		
+		// filling the holes gives the rectangle back
+		Region full = rgn.union(new Region(10, 10, 20, 20)).union(new Region(30, 10, 40, 20));
+		assertEquals(new Region(0, 0, 100, 100), full);
+		assertEquals(1, full.getRectCount());
+	}
+	
+	public void testIntersect() {
+		Region a = new Region(0, 0, 50, 50);
+		Region b = new Region(25, 25, 75, 75);
+		assertEquals(new Region(25, 25, 50, 50), a.intersect(b));
+		assertTrue(a.intersect(new Region(50, 0, 60, 50)).isEmpty());
+	}
+	
+	public void testXor() {
+		Region a = new Region(0, 0, 50, 50);
+		Region b = new Region(25, 25, 75, 75);
+		Region x = a.xor(b);
+		assertEquals(a.union(b).subtract(a.intersect(b)), x);
+		assertTrue(x.xor(b).equals(a));
+	}
+	
+	public void testOffset() {
+		Region rgn = new Region(0, 0, 100, 100).subtract(new Region(10, 10, 20, 20));
+		Region moved = rgn.offset(5, -5);
+		assertEquals(new Region(5, -5, 105, 95).subtract(new Region(15, 5, 25, 15)), moved);
+		assertEquals(rgn.hashCode(), moved.offset(-5, 5).hashCode());
+	}
+	
+	public void testRects() {
+		Region rgn = new Region(0, 0, 10, 10).union(new Region(20, 0, 30, 10));
+		int[] rects = rgn.getRects();
+		assertEquals(8, rects.length);
+		assertEquals(0, rects[0]);
+		assertEquals(10, rects[2]);
+		assertEquals(20, rects[4]);
+		assertEquals(30, rects[6]);
+	}
+}
@@ -0,0 +1,40 @@
+package net.arnx.wmf2svg.gdi;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class TextDecoderTest extends TestCase {
+	public void testDecode() throws Exception {
+		TextDecoder decoder = new TextDecoder();
+		assertEquals("abc", decoder.decode("abc\0def".getBytes("US-ASCII"), GdiFont.ANSI_CHARSET));
+		assertEquals("", decoder.decode(new byte[0], GdiFont.ANSI_CHARSET));
+		assertEquals("\u00E9t\u00E9", decoder.decode(new byte[] { (byte)0xE9, 't', (byte)0xE9 }, GdiFont.ANSI_CHARSET));
+		assertEquals("\u65E5\u672C\u8A9Eabc", decoder.decode("\u65E5\u672C\u8A9Eabc".getBytes("MS932"), GdiFont.SHIFTJIS_CHARSET));
+		assertEquals("\u4E2D\u6587", decoder.decode("\u4E2D\u6587".getBytes("MS936"), GdiFont.GB2312_CHARSET));
+		
+		// the unknown charsets are regarded as the default
+		assertEquals("abc", decoder.decode("abc".getBytes("US-ASCII"), 1000));
+		
+		// longer than the initial buffer
+		char[] chars = new char[1000];
+		Arrays.fill(chars, '\u3042');
+		String text = new String(chars);
+		assertEquals(text, decoder.decode(text.getBytes("MS932"), GdiFont.SHIFTJIS_CHARSET));
+		
+		assertEquals("abc", GdiUtils.convertString("abc".getBytes("US-ASCII"), GdiFont.ANSI_CHARSET));
+	}
+	
+	public void testToCharDx() throws Exception {
+		TextDecoder decoder = new TextDecoder();
+		decoder.decode("\u65E5\u672Ca\u8A9E".getBytes("MS932"), GdiFont.SHIFTJIS_CHARSET);
+		assertTrue(Arrays.equals(new int[] { 3, 7, 5, 13 },
+				decoder.toCharDx(new int[] { 1, 2, 3, 4, 5, 6, 7 })));
+		assertNull(decoder.toCharDx(null));
+		assertNull(decoder.toCharDx(new int[0]));
+		
+		decoder.decode("abc".getBytes("US-ASCII"), GdiFont.ANSI_CHARSET);
+		int[] dx = new int[] { 1, 2, 3 };
+		assertSame(dx, decoder.toCharDx(dx));
+	}
+}
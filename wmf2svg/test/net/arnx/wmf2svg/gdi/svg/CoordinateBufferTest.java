@@ -0,0 +1,37 @@
+package net.arnx.wmf2svg.gdi.svg;
+
+import junit.framework.TestCase;
+
+public class CoordinateBufferTest extends TestCase {
+	public void testInt() {
+		CoordinateBuffer buffer = new CoordinateBuffer(2);
+		buffer.append(0).append(' ').append(-15).append(',').append(Integer.MAX_VALUE)
+			.append(' ').append(Integer.MIN_VALUE);
+		assertEquals("0 -15," + Integer.MAX_VALUE + " " + Integer.MIN_VALUE, buffer.toString());
+	}
+	
+	public void testDouble() {
+		CoordinateBuffer buffer = new CoordinateBuffer(2);
+		assertEquals("500", buffer.format(500.0));
+		assertEquals("49.5", buffer.format(49.5));
+		assertEquals("649.99", buffer.format(649.9900749895609));
+		assertEquals("0.05", buffer.format(0.049));
+		assertEquals("-1.01", buffer.format(-1.006));
+		assertEquals("0", buffer.format(-0.001));
+		assertEquals("NaN", buffer.format(Double.NaN));
+		assertEquals(0, buffer.length());
+		
+		assertEquals("3", new CoordinateBuffer(0).format(2.5));
+		assertEquals("0.12345679", new CoordinateBuffer(8).format(0.123456789));
+	}
+	
+	public void testFormatKeepsContents() {
+		CoordinateBuffer buffer = new CoordinateBuffer(2);
+		buffer.append("M ").append(1.5);
+		assertEquals("7", buffer.format(7));
+		buffer.append(",2");
+		assertEquals("M 1.5,2", buffer.toString());
+		buffer.setLength(0);
+		assertEquals("", buffer.toString());
+	}
+}
@@ -0,0 +1,299 @@
+package net.arnx.wmf2svg.gdi.svg;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import net.arnx.wmf2svg.Main;
+import net.arnx.wmf2svg.gdi.Gdi;
+import net.arnx.wmf2svg.gdi.GdiBrush;
+import net.arnx.wmf2svg.gdi.GdiPen;
+import net.arnx.wmf2svg.gdi.wmf.WmfGdi;
+import net.arnx.wmf2svg.gdi.wmf.WmfParser;
+
+import junit.framework.TestCase;
+
+public class SvgGdiTest extends TestCase {
+	public void testReset() throws Exception {
+		WmfGdi wmf = new WmfGdi();
+		wmf.placeableHeader(0, 0, 1000, 1000, 1440);
+		wmf.header();
+		wmf.setWindowOrgEx(0, 0, null);
+		wmf.setWindowExtEx(1000, 1000, null);
+		GdiBrush brush = wmf.createBrushIndirect(GdiBrush.BS_SOLID, 0x0000FF, 0);
+		wmf.selectObject(brush);
+		wmf.rectangle(10, 10, 500, 500);
+		wmf.footer();
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		wmf.write(data);
+		
+		SvgGdi gdi = new SvgGdi(SvgGdiConfig.getDefault());
+		String first = convert(gdi, data.toByteArray());
+		gdi.reset();
+		String second = convert(gdi, data.toByteArray());
+		assertEquals(first, second);
+		
+		// a fresh instance makes the same file
+		assertEquals(first, convert(new SvgGdi(), data.toByteArray()));
+		assertTrue(gdi.isEnded());
+		
+		// a truncated file ends without footer()
+		gdi.reset();
+		assertFalse(gdi.isEnded());
+		byte[] truncated = new byte[data.size() - 10];
+		System.arraycopy(data.toByteArray(), 0, truncated, 0, truncated.length);
+		convert(gdi, truncated);
+		assertFalse(gdi.isEnded());
+		
+		// and its spool is discarded by reset()
+		gdi.reset();
+	}
+	
+	public void testConfig() throws Exception {
+		SvgGdiConfig config = SvgGdiConfig.getDefault();
+		assertSame(config, SvgGdiConfig.getDefault());
+		assertSame(config, config.withFlags(false, false));
+		assertTrue(config.withFlags(true, false).isCompatible());
+		
+		assertEquals(0.895104895104895, config.getFontEmHeight("Arial"), 0.0);
+		assertEquals(1.0, config.getFontEmHeight("unknown font"), 0.0);
+		assertEquals("MS Gothic", config.getAlternativeFont("\uff2d\uff33\u0020\u30b4\u30b7\u30c3\u30af"));
+	}
+	
+	public void testExcludeClipRect() throws Exception {
+		SvgGdi gdi = new SvgGdi();
+		gdi.placeableHeader(0, 0, 1000, 1000, 1440);
+		gdi.header();
+		gdi.setWindowOrgEx(0, 0, null);
+		gdi.setWindowExtEx(1000, 1000, null);
+		
+		// successive exclusions make one clip path
+		gdi.excludeClipRect(0, 0, 10, 10);
+		gdi.excludeClipRect(20, 20, 30, 30);
+		gdi.rectangle(0, 0, 100, 100);
+		
+		// out of the clip
+		gdi.rectangle(2, 2, 6, 6);
+		
+		// in the clip
+		gdi.rectangle(40, 40, 60, 60);
+		
+		gdi.selectClipRgn(null);
+		gdi.rectangle(0, 0, 100, 100);
+		gdi.footer();
+		
+		NodeList clipPaths = gdi.getDocument().getElementsByTagName("clipPath");
+		assertEquals(1, clipPaths.getLength());
+		Element clipPath = (Element)clipPaths.item(0);
+		assertEquals(5, clipPath.getElementsByTagName("rect").getLength());
+		
+		NodeList groups = gdi.getDocument().getElementsByTagName("g");
+		assertEquals(2, groups.getLength());
+		Element group = (Element)groups.item(0);
+		assertEquals("url(#" + clipPath.getAttribute("id") + ")", group.getAttribute("clip-path"));
+		assertEquals(2, group.getChildNodes().getLength());
+		assertFalse(((Element)groups.item(1)).hasAttribute("clip-path"));
+	}
+	
+	public void testLineTo() throws Exception {
+		SvgGdi gdi = new SvgGdi();
+		gdi.placeableHeader(0, 0, 1000, 1000, 1440);
+		gdi.header();
+		gdi.setWindowOrgEx(0, 0, null);
+		gdi.setWindowExtEx(1000, 1000, null);
+		
+		gdi.moveToEx(0, 0, null);
+		gdi.lineTo(100, 0);
+		gdi.lineTo(100, 100);
+		gdi.moveToEx(200, 200, null);
+		gdi.lineTo(300, 300);
+		
+		// a new pen starts a new path
+		gdi.selectObject(gdi.createPenIndirect(GdiPen.PS_SOLID, 5, 0x0000FF));
+		gdi.lineTo(400, 300);
+		
+		// and so does another drawing
+		gdi.rectangle(0, 0, 10, 10);
+		gdi.lineTo(500, 300);
+		gdi.footer();
+		
+		NodeList paths = gdi.getDocument().getElementsByTagName("path");
+		assertEquals(3, paths.getLength());
+		assertEquals("M 0,0 L 100,0 L 100,100 M 200,200 L 300,300",
+				((Element)paths.item(0)).getAttribute("d"));
+		assertEquals("M 300,300 L 400,300", ((Element)paths.item(1)).getAttribute("d"));
+		assertEquals("rect", paths.item(1).getNextSibling().getNodeName());
+		assertEquals(0, gdi.getDocument().getElementsByTagName("line").getLength());
+	}
+	
+	public void testTruncatedLineTo() throws Exception {
+		WmfGdi wmf = new WmfGdi();
+		wmf.placeableHeader(0, 0, 1000, 1000, 1440);
+		wmf.header();
+		wmf.setWindowOrgEx(0, 0, null);
+		wmf.setWindowExtEx(1000, 1000, null);
+		wmf.moveToEx(0, 0, null);
+		wmf.lineTo(100, 0);
+		wmf.lineTo(100, 100);
+		wmf.footer();
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		wmf.write(data);
+		
+		// without the end record, the parser does not call footer()
+		byte[] truncated = new byte[data.size() - 6];
+		System.arraycopy(data.toByteArray(), 0, truncated, 0, truncated.length);
+		SvgGdi gdi = new SvgGdi();
+		new WmfParser().parse(truncated, gdi);
+		assertFalse(gdi.isEnded());
+		
+		NodeList paths = gdi.getDocument().getElementsByTagName("path");
+		assertEquals(1, paths.getLength());
+		assertEquals("M 0,0 L 100,0 L 100,100", ((Element)paths.item(0)).getAttribute("d"));
+	}
+	
+	public void testBulkTransform() throws Exception {
+		SvgGdi gdi = new SvgGdi();
+		gdi.placeableHeader(0, 0, 1000, 1000, 1440);
+		gdi.header();
+		gdi.setMapMode(Gdi.MM_LOMETRIC);
+		gdi.setWindowOrgEx(-30, 70, null);
+		gdi.setWindowExtEx(1000, -1000, null);
+		gdi.offsetWindowOrgEx(5, -3, null);
+		gdi.scaleWindowExtEx(3, 7, 2, 3, null);
+		
+		SvgDc dc = gdi.getDC();
+		int[] points = { 0, 0, 123, -456, -789, 1011, 32767, -32768 };
+		int[] dest = new int[points.length];
+		dc.toAbsolute(points, points.length / 2, dest);
+		for (int i = 0; i < points.length; i += 2) {
+			assertEquals((int)dc.toAbsoluteX(points[i]), dest[i]);
+			assertEquals((int)dc.toAbsoluteY(points[i + 1]), dest[i + 1]);
+		}
+	}
+	
+	public void testTextClip() throws Exception {
+		SvgGdi gdi = new SvgGdi();
+		gdi.placeableHeader(0, 0, 1000, 1000, 1440);
+		gdi.header();
+		gdi.extTextOut(10, 10, Gdi.ETO_CLIPPED, new int[] { 0, 0, 100, 100 }, new byte[] { 'a' }, null);
+		gdi.footer();
+		
+		NodeList clipPaths = gdi.getDocument().getElementsByTagName("clipPath");
+		assertEquals(1, clipPaths.getLength());
+		String id = ((Element)clipPaths.item(0)).getAttribute("id");
+		assertSame(clipPaths.item(0), gdi.getDocument().getElementById(id));
+	}
+	
+	public void testBitmapSource() throws Exception {
+		// a 4x4 bottom-up bitmap
+		byte[] dib = new byte[40 + 12 * 4];
+		dib[0] = 40;
+		dib[4] = 4;
+		dib[8] = 4;
+		dib[12] = 1;
+		dib[14] = 24;
+		
+		SvgGdi gdi = new SvgGdi();
+		gdi.placeableHeader(0, 0, 1000, 1000, 1440);
+		gdi.header();
+		gdi.setWindowOrgEx(0, 0, null);
+		gdi.setWindowExtEx(1000, 1000, null);
+		
+		// the bottom row is the last one of the image
+		gdi.stretchDIBits(0, 0, 100, 100, 1, 0, 2, 1, dib, Gdi.DIB_RGB_COLORS, Gdi.SRCCOPY);
+		
+		// a negative source extent mirrors the same rectangle
+		gdi.stretchDIBits(0, 0, 100, 100, 3, 0, -2, 1, dib, Gdi.DIB_RGB_COLORS, Gdi.SRCCOPY);
+		gdi.footer();
+		
+		NodeList symbols = gdi.getDocument().getElementsByTagName("symbol");
+		assertEquals(1, symbols.getLength());
+		assertEquals("1 3 2 1", ((Element)symbols.item(0)).getAttribute("viewBox"));
+		
+		NodeList uses = gdi.getDocument().getElementsByTagName("g").item(0).getChildNodes();
+		assertEquals(2, uses.getLength());
+		assertFalse(((Element)uses.item(0)).hasAttribute("transform"));
+		assertEquals("scale(-1, 1) translate(-100, 0)", ((Element)uses.item(1)).getAttribute("transform"));
+	}
+	
+	public void testBitmapError() throws Exception {
+		// a 24 bit bitmap with bit fields, that cannot be converted
+		byte[] dib = new byte[40 + 12 * 4];
+		dib[0] = 40;
+		dib[4] = 4;
+		dib[8] = 4;
+		dib[12] = 1;
+		dib[14] = 24;
+		dib[16] = 3;
+		
+		SvgGdi gdi = new SvgGdi();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		gdi.setOutput(out);
+		gdi.setImageExecutor(new Executor() {
+			public void execute(Runnable command) {
+				command.run();
+			}
+		});
+		gdi.placeableHeader(0, 0, 1000, 1000, 1440);
+		gdi.header();
+		gdi.stretchDIBits(0, 0, 100, 100, 0, 0, 4, 4, dib, Gdi.DIB_RGB_COLORS, Gdi.SRCCOPY);
+		gdi.footer();
+		
+		String svg = out.toString("UTF-8");
+		assertEquals(-1, svg.indexOf("<image"));
+		assertEquals(0, gdi.getDocument().getElementsByTagName("symbol").item(0).getChildNodes().getLength());
+	}
+	
+	public void testStreamingEscape() throws Exception {
+		byte[] text = new byte[] { 'a', 0x01, '<', 0x1F, '\t', 'b' };
+		
+		SvgGdi dom = new SvgGdi();
+		draw(dom, text);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		Main.output(dom.getDocument(), expected);
+		
+		SvgGdi streaming = new SvgGdi();
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		streaming.setOutput(actual);
+		draw(streaming, text);
+		
+		String svg = actual.toString("UTF-8");
+		assertTrue(svg.indexOf("a&#1;&lt;&#31;\tb") != -1);
+		assertEquals(expected.toString("UTF-8"), svg);
+	}
+	
+	public void testStreamingError() throws Exception {
+		SvgGdi gdi = new SvgGdi();
+		gdi.setOutput(new OutputStream() {
+			public void write(int b) throws IOException {
+				throw new IOException("disk full");
+			}
+		});
+		try {
+			draw(gdi, new byte[] { 'a' });
+			fail();
+		} catch (UncheckedSvgGdiException e) {
+			assertTrue(e.getCause().getCause() instanceof IOException);
+		}
+	}
+	
+	private void draw(SvgGdi gdi, byte[] text) {
+		gdi.placeableHeader(0, 0, 1000, 1000, 1440);
+		gdi.header();
+		gdi.setWindowOrgEx(0, 0, null);
+		gdi.setWindowExtEx(1000, 1000, null);
+		gdi.textOut(10, 10, text);
+		gdi.footer();
+	}
+	
+	private String convert(SvgGdi gdi, byte[] data) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		gdi.setOutput(out);
+		new WmfParser().parse(data, gdi);
+		return out.toString("UTF-8");
+	}
+}
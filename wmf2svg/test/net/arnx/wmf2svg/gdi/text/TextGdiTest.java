@@ -0,0 +1,76 @@
+package net.arnx.wmf2svg.gdi.text;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.arnx.wmf2svg.gdi.GdiBrush;
+import net.arnx.wmf2svg.gdi.GdiFont;
+import net.arnx.wmf2svg.gdi.GdiPen;
+import net.arnx.wmf2svg.gdi.wmf.WmfGdi;
+import net.arnx.wmf2svg.gdi.wmf.WmfParser;
+
+import junit.framework.TestCase;
+
+public class TextGdiTest extends TestCase {
+	public void testText() throws Exception {
+		byte[] data = createData();
+		
+		final List runs = new ArrayList();
+		TextGdi gdi = new TextGdi(new TextGdi.Handler() {
+			public void text(String text, int x, int y, GdiFont font) {
+				runs.add(text + "@" + x + "," + y + ":" + font.getFaceName());
+			}
+		});
+		WmfParser parser = new WmfParser();
+		parser.setSkippedRecords(TextGdi.getSkippedRecords());
+		parser.parse(data, gdi);
+		
+		assertEquals(3, runs.size());
+		assertEquals("Hello@90,190:Arial", runs.get(0));
+		assertEquals("world@200,300:Arial", runs.get(1));
+		assertEquals("\u65E5\u672C\u8A9E@10,20:MS Gothic", runs.get(2));
+		
+		// the skipped records do not change the objects
+		StringBuilder sb = new StringBuilder();
+		new WmfParser().parse(data, new TextGdi(sb));
+		assertEquals("Hello\nworld\n\u65E5\u672C\u8A9E\n", sb.toString());
+	}
+	
+	private byte[] createData() throws Exception {
+		WmfGdi gdi = new WmfGdi();
+		gdi.placeableHeader(0, 0, 1000, 1000, 1440);
+		gdi.header();
+		gdi.setWindowOrgEx(10, 10, null);
+		
+		GdiPen pen = gdi.createPenIndirect(GdiPen.PS_SOLID, 1, 0);
+		GdiBrush brush = gdi.createBrushIndirect(GdiBrush.BS_SOLID, 0xFF, 0);
+		gdi.selectObject(pen);
+		gdi.selectObject(brush);
+		gdi.rectangle(0, 0, 100, 100);
+		gdi.polyline(new int[] { 0, 0, 10, 10, 20, 0 }, 3);
+		
+		GdiFont arial = gdi.createFontIndirect(-240, 0, 0, 0, GdiFont.FW_NORMAL,
+				false, false, false, GdiFont.ANSI_CHARSET,
+				GdiFont.OUT_DEFAULT_PRECIS, GdiFont.CLIP_DEFAULT_PRECIS,
+				GdiFont.DEFAULT_QUALITY, GdiFont.DEFAULT_PITCH, "Arial".getBytes("US-ASCII"));
+		gdi.selectObject(arial);
+		gdi.textOut(100, 200, "Hello".getBytes("US-ASCII"));
+		gdi.extTextOut(210, 310, 0, null, "world".getBytes("US-ASCII"), new int[] { 10, 10, 10, 10, 10 });
+		
+		GdiFont gothic = gdi.createFontIndirect(-240, 0, 0, 0, GdiFont.FW_NORMAL,
+				false, false, false, GdiFont.SHIFTJIS_CHARSET,
+				GdiFont.OUT_DEFAULT_PRECIS, GdiFont.CLIP_DEFAULT_PRECIS,
+				GdiFont.DEFAULT_QUALITY, GdiFont.DEFAULT_PITCH, "MS Gothic".getBytes("US-ASCII"));
+		gdi.selectObject(gothic);
+		gdi.setTextAlign(TextGdi.TA_UPDATECP);
+		gdi.moveToEx(20, 30, null);
+		gdi.textOut(0, 0, "\u65E5\u672C\u8A9E".getBytes("MS932"));
+		gdi.deleteObject(brush);
+		gdi.footer();
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		gdi.write(out);
+		return out.toByteArray();
+	}
+}
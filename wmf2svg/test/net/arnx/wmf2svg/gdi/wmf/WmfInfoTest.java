@@ -0,0 +1,54 @@
+package net.arnx.wmf2svg.gdi.wmf;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class WmfInfoTest extends TestCase {
+	public void testRead() throws Exception {
+		byte[] data = WmfParserTest.createData(100);
+		ByteArrayInputStream in = new ByteArrayInputStream(data);
+		WmfInfo info = WmfInfo.read(in);
+		assertTrue(info.isPlaceable());
+		assertEquals(1000, info.getRight());
+		assertEquals(1000, info.getBottom());
+		assertEquals(1440, info.getDpi());
+		assertEquals(0x0300, info.getVersion());
+		assertEquals(data.length - 22, info.getFileSize() * 2);
+		assertFalse(info.isScanned());
+		assertEquals(0, info.getRecordCount());
+		
+		// only the beginning of the file is read
+		assertTrue(in.available() > data.length - 100);
+		
+		try {
+			WmfInfo.read(new ByteArrayInputStream(new byte[0]));
+			fail();
+		} catch (WmfParseException e) {
+		}
+	}
+	
+	public void testScan() throws Exception {
+		byte[] data = WmfParserTest.createData(100);
+		WmfInfo info = WmfInfo.scan(new ByteArrayInputStream(data));
+		assertTrue(info.isScanned());
+		assertFalse(info.isTruncated());
+		assertEquals(10, info.getRecordCount(WmfConstants.RECORD_STRETCH_DIBITS));
+		assertEquals(40, info.getRecordCount(WmfConstants.RECORD_LINE_TO));
+		assertEquals(40, info.getRecordCount(WmfConstants.RECORD_MOVE_TO_EX));
+		assertEquals(50, info.getRecordCount(WmfConstants.RECORD_POLYLINE));
+		assertEquals(141, info.getRecordCount());
+		assertEquals(10 * WmfParserTest.createDib(0).length, info.getDibBytes());
+		
+		int[] ids = info.getRecordIds();
+		assertEquals(5, ids.length);
+		int[] sorted = ids.clone();
+		Arrays.sort(sorted);
+		assertTrue(Arrays.equals(sorted, ids));
+		
+		info = WmfInfo.scan(new WmfRecordReader(Arrays.copyOf(data, data.length / 2)));
+		assertTrue(info.isTruncated());
+		assertTrue(info.getRecordCount() < 141);
+	}
+}
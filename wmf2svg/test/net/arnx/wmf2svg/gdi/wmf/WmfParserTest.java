@@ -0,0 +1,143 @@
+package net.arnx.wmf2svg.gdi.wmf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.arnx.wmf2svg.gdi.Dib;
+import net.arnx.wmf2svg.gdi.Gdi;
+
+import junit.framework.TestCase;
+
+public class WmfParserTest extends TestCase {
+	public void testPipeline() throws Exception {
+		byte[] data = createData(500);
+		byte[] expected = convert(new WmfParser(), data);
+		
+		WmfParser parser = new WmfParser();
+		parser.setPipelineSize(4);
+		assertTrue(Arrays.equals(expected, convert(parser, data)));
+		
+		WmfGdi gdi = new WmfGdi();
+		parser.parse(new ByteArrayInputStream(data), gdi);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		gdi.write(out);
+		assertTrue(Arrays.equals(expected, out.toByteArray()));
+	}
+	
+	public void testPipelineBitmaps() throws Exception {
+		byte[] data = createData(100);
+		final List images = new ArrayList();
+		Gdi gdi = (Gdi)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { Gdi.class }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("stretchDIBits") && args[8] instanceof Dib) {
+					images.add(args[8]);
+				}
+				return null;
+			}
+		});
+		
+		WmfParser parser = new WmfParser();
+		parser.setPipelineSize(2);
+		parser.parse(new ByteArrayInputStream(data), gdi);
+		
+		// the bitmaps kept by the gdi are not overwritten by the next records
+		assertEquals(10, images.size());
+		for (int i = 0; i < images.size(); i++) {
+			assertTrue(Arrays.equals(createDib(i), ((Dib)images.get(i)).toByteArray()));
+		}
+	}
+	
+	public void testPipelineErrors() throws Exception {
+		byte[] data = createData(500);
+		WmfParser parser = new WmfParser();
+		parser.setPipelineSize(4);
+		
+		// a truncated file ends without the footer as before
+		byte[] truncated = Arrays.copyOf(data, data.length / 2);
+		WmfGdi gdi = new WmfGdi();
+		parser.parse(truncated, gdi);
+		
+		try {
+			parser.parse(new byte[0], new WmfGdi());
+			fail();
+		} catch (WmfParseException e) {
+		}
+		
+		// an exception of the gdi stops the reading thread
+		Gdi failing = (Gdi)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { Gdi.class }, new InvocationHandler() {
+			int count = 0;
+			
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("lineTo") && ++count == 10) {
+					throw new IllegalStateException("failed");
+				}
+				return null;
+			}
+		});
+		try {
+			parser.parse(new ByteArrayInputStream(data), failing);
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("failed", e.getMessage());
+		}
+		
+		PipelinedRecordReader reader = new PipelinedRecordReader(new WmfRecordReader(truncated), 4);
+		try {
+			while (reader.next()) {
+			}
+			fail();
+		} catch (EOFException e) {
+		} finally {
+			reader.close();
+		}
+	}
+	
+	private byte[] convert(WmfParser parser, byte[] data) throws Exception {
+		WmfGdi gdi = new WmfGdi();
+		parser.parse(data, gdi);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		gdi.write(out);
+		return out.toByteArray();
+	}
+	
+	static byte[] createData(int records) throws Exception {
+		WmfGdi gdi = new WmfGdi();
+		gdi.placeableHeader(0, 0, 1000, 1000, 1440);
+		gdi.header();
+		gdi.setWindowOrgEx(0, 0, null);
+		for (int i = 0; i < records; i++) {
+			if (i % 10 == 0) {
+				gdi.stretchDIBits(i, i, 4, 4, 0, 0, 2, 2, createDib(i / 10), Gdi.DIB_RGB_COLORS, Gdi.SRCCOPY);
+			} else if (i % 2 == 0) {
+				gdi.moveToEx(i, 0, null);
+				gdi.lineTo(0, i);
+			} else {
+				gdi.polyline(new int[] { 0, 0, i, i, i * 2, 0, i, 5 }, 4);
+			}
+		}
+		gdi.footer();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		gdi.write(out);
+		return out.toByteArray();
+	}
+	
+	static byte[] createDib(int seed) {
+		byte[] dib = new byte[40 + 8 * 2];
+		dib[0] = 40;
+		dib[4] = 2;
+		dib[8] = 2;
+		dib[12] = 1;
+		dib[14] = 24;
+		for (int i = 40; i < dib.length; i++) {
+			dib[i] = (byte)(seed * 31 + i);
+		}
+		return dib;
+	}
+}
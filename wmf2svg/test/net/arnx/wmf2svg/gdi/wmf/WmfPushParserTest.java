@@ -0,0 +1,104 @@
+package net.arnx.wmf2svg.gdi.wmf;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.arnx.wmf2svg.gdi.Dib;
+import net.arnx.wmf2svg.gdi.Gdi;
+
+import junit.framework.TestCase;
+
+public class WmfPushParserTest extends TestCase {
+	public void testFeed() throws Exception {
+		byte[] data = WmfParserTest.createData(200);
+		WmfGdi expected = new WmfGdi();
+		new WmfParser().parse(data, expected);
+		
+		int[] chunks = { 1, 3, 7, 64, 1000, data.length };
+		for (int i = 0; i < chunks.length; i++) {
+			WmfGdi gdi = new WmfGdi();
+			WmfPushParser parser = new WmfPushParser(gdi);
+			ByteBuffer buffer = ByteBuffer.allocate(chunks[i]);
+			for (int pos = 0; pos < data.length; pos += chunks[i]) {
+				buffer.clear();
+				buffer.put(data, pos, Math.min(chunks[i], data.length - pos));
+				buffer.flip();
+				parser.feed(buffer);
+				assertFalse(buffer.hasRemaining());
+			}
+			assertTrue(parser.isEnded());
+			parser.finish();
+			assertTrue("chunk " + chunks[i], Arrays.equals(toBytes(expected), toBytes(gdi)));
+		}
+	}
+	
+	public void testFeedBitmaps() throws Exception {
+		byte[] data = WmfParserTest.createData(100);
+		
+		// the bitmaps are split or not split by the chunks
+		assertFeedBitmaps(data, 50);
+		assertFeedBitmaps(data, 1024);
+	}
+	
+	private void assertFeedBitmaps(byte[] data, int chunk) throws Exception {
+		final List images = new ArrayList();
+		Gdi gdi = (Gdi)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { Gdi.class }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("stretchDIBits") && args[8] instanceof Dib) {
+					images.add(args[8]);
+				}
+				return null;
+			}
+		});
+		
+		// the buffer is overwritten after each feed
+		WmfPushParser parser = new WmfPushParser(gdi);
+		ByteBuffer buffer = ByteBuffer.allocate(chunk);
+		for (int pos = 0; pos < data.length; pos += chunk) {
+			buffer.clear();
+			buffer.put(data, pos, Math.min(chunk, data.length - pos));
+			buffer.flip();
+			parser.feed(buffer);
+		}
+		buffer.clear();
+		buffer.put(new byte[chunk]);
+		
+		assertEquals(10, images.size());
+		for (int i = 0; i < images.size(); i++) {
+			assertTrue(Arrays.equals(WmfParserTest.createDib(i), ((Dib)images.get(i)).toByteArray()));
+		}
+	}
+	
+	public void testFinish() throws Exception {
+		byte[] data = WmfParserTest.createData(100);
+		WmfPushParser parser = new WmfPushParser(new WmfGdi());
+		parser.feed(ByteBuffer.wrap(data, 0, data.length / 2));
+		assertFalse(parser.isEnded());
+		parser.finish();
+		assertTrue(parser.isEnded());
+		
+		try {
+			new WmfPushParser(new WmfGdi()).finish();
+			fail();
+		} catch (WmfParseException e) {
+		}
+		
+		try {
+			new WmfPushParser(new WmfGdi()).feed(ByteBuffer.wrap(new byte[100]));
+			fail();
+		} catch (WmfParseException e) {
+		}
+	}
+	
+	private static byte[] toBytes(WmfGdi gdi) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		gdi.write(out);
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,113 @@
+package net.arnx.wmf2svg.gdi.wmf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class WmfRecordReaderTest extends TestCase {
+	public void testNext() throws Exception {
+		byte[] data = createData();
+		
+		WmfRecordReader reader = new WmfRecordReader(data);
+		reader.readHeader();
+		assertTrue(reader.isPlaceable());
+		assertEquals(1000, reader.getRight());
+		assertEquals(1440, reader.getDpi());
+		
+		assertTrue(reader.next());
+		assertEquals(WmfConstants.RECORD_SET_WINDOW_ORG_EX, reader.getId());
+		assertEquals(22 + 18, reader.getOffset());
+		assertEquals(5, reader.getSize());
+		
+		// the rest of the record is skipped
+		assertTrue(reader.next());
+		assertEquals(WmfConstants.RECORD_MOVE_TO_EX, reader.getId());
+		assertEquals(22 + 18 + 10, reader.getOffset());
+		
+		assertTrue(reader.next());
+		assertEquals(WmfConstants.RECORD_LINE_TO, reader.getId());
+		assertEquals(4, reader.getRemaining());
+		assertEquals(30, reader.readInt16());
+		assertEquals(20, reader.readInt16());
+		assertEquals(4, reader.getPosition());
+		assertEquals(0, reader.getRemaining());
+		
+		assertTrue(reader.next());
+		assertEquals(WmfConstants.RECORD_POLYLINE, reader.getId());
+		assertEquals(3, reader.readInt16());
+		
+		assertFalse(reader.next());
+		assertFalse(reader.next());
+	}
+	
+	public void testSameRecordsAsStream() throws Exception {
+		byte[] data = createData();
+		WmfRecordReader a = new WmfRecordReader(data);
+		WmfRecordReader b = new WmfRecordReader(new ByteArrayInputStream(data));
+		while (a.next()) {
+			assertTrue(b.next());
+			assertEquals(a.getId(), b.getId());
+			assertEquals(a.getOffset(), b.getOffset());
+			assertTrue(Arrays.equals(a.readBytes(a.getRemaining()), b.readBytes(b.getRemaining())));
+		}
+		assertFalse(b.next());
+	}
+	
+	public void testTruncated() throws Exception {
+		byte[] data = createData();
+		WmfRecordReader reader = new WmfRecordReader(Arrays.copyOf(data, data.length - 10));
+		try {
+			while (reader.next()) {
+			}
+			fail();
+		} catch (EOFException e) {
+		}
+		
+		try {
+			new WmfRecordReader(new byte[0]).next();
+			fail();
+		} catch (WmfParseException e) {
+		}
+	}
+	
+	public void testInvalidSize() throws Exception {
+		byte[] data = createData();
+		
+		// the size of the first record is 0x80000003 words
+		int pos = 22 + 18;
+		data[pos + 3] = (byte)0x80;
+		WmfRecordReader reader = new WmfRecordReader(data);
+		try {
+			reader.next();
+			fail();
+		} catch (WmfParseException e) {
+		}
+		
+		// and then 2 words, that is shorter than the size and the id
+		data[pos] = 2;
+		data[pos + 3] = 0;
+		reader = new WmfRecordReader(data);
+		try {
+			reader.next();
+			fail();
+		} catch (WmfParseException e) {
+		}
+	}
+	
+	private byte[] createData() throws Exception {
+		WmfGdi gdi = new WmfGdi();
+		gdi.placeableHeader(0, 0, 1000, 1000, 1440);
+		gdi.header();
+		gdi.setWindowOrgEx(0, 0, null);
+		gdi.moveToEx(10, 10, null);
+		gdi.lineTo(20, 30);
+		gdi.polyline(new int[] { 0, 0, 10, 10, 20, 0 }, 3);
+		gdi.footer();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		gdi.write(out);
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,93 @@
+package net.arnx.wmf2svg.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+
+import junit.framework.TestCase;
+
+public class BufferedDataInputTest extends TestCase {
+	private static final byte[] DATA = new byte[] {
+		(byte)0xD7, (byte)0xCD, (byte)0xC6, (byte)0x9A,
+		(byte)0xFE, (byte)0xFF,
+		(byte)0x01, (byte)0x02, (byte)0x03, (byte)0x04, (byte)0x05,
+		(byte)0x80, (byte)0x00, (byte)0x00, (byte)0x00
+	};
+	
+	public void testByteArray() throws IOException {
+		check(new BufferedDataInput(DATA, ByteOrder.LITTLE_ENDIAN));
+	}
+	
+	public void testStream() throws IOException {
+		// the smallest buffer forces a refill in the middle of the fields
+		check(new BufferedDataInput(new TrickleInputStream(DATA), ByteOrder.LITTLE_ENDIAN, 8));
+	}
+	
+	public void testBigEndian() throws IOException {
+		BufferedDataInput in = new BufferedDataInput(DATA, ByteOrder.BIG_ENDIAN);
+		assertEquals(0xD7CDC69AL, in.readUint32());
+		assertEquals(0xFEFF, in.readUint16());
+	}
+	
+	public void testSkipOverBuffer() throws IOException {
+		byte[] data = new byte[100];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte)i;
+		}
+		BufferedDataInput in = new BufferedDataInput(new TrickleInputStream(data), ByteOrder.LITTLE_ENDIAN, 8);
+		in.readByte();
+		in.setCount(0);
+		in.skip(50);
+		assertEquals(50, in.getCount());
+		assertEquals(51, in.readByte());
+		byte[] bytes = in.readBytes(20);
+		assertEquals(52, bytes[0]);
+		assertEquals(71, bytes[19]);
+		assertEquals(71, in.getCount());
+		in.skip(28);
+		try {
+			in.readByte();
+			fail();
+		} catch (EOFException e) {
+		}
+	}
+	
+	private void check(BufferedDataInput in) throws IOException {
+		assertEquals(0x9AC6CDD7L, in.readUint32());
+		in.setCount(0);
+		assertEquals(-2, in.readInt16());
+		assertEquals(1, in.readByte());
+		assertEquals(3, in.getCount());
+		in.skip(2);
+		assertEquals(0x0504, in.readUint16());
+		assertEquals(7, in.getCount());
+		assertEquals(0x80, in.readInt32());
+		try {
+			in.readInt16();
+			fail();
+		} catch (EOFException e) {
+		}
+	}
+	
+	private static class TrickleInputStream extends InputStream {
+		private byte[] data;
+		private int pos = 0;
+		
+		public TrickleInputStream(byte[] data) {
+			this.data = data;
+		}
+		
+		public int read() {
+			return (pos < data.length) ? (0xFF & data[pos++]) : -1;
+		}
+		
+		public int read(byte[] b, int off, int len) {
+			if (pos >= data.length) return -1;
+			if (len == 0) return 0;
+			b[off] = data[pos++];
+			return 1;
+		}
+	}
+}
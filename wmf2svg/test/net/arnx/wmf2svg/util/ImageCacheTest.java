@@ -0,0 +1,36 @@
+package net.arnx.wmf2svg.util;
+
+import junit.framework.TestCase;
+
+public class ImageCacheTest extends TestCase {
+	public void testEviction() {
+		ImageCache cache = new ImageCache(100);
+		cache.put("a", new byte[40]);
+		cache.put("b", new byte[40]);
+		assertNotNull(cache.get("a"));
+		
+		// "b" is the least recently used
+		cache.put("c", new byte[40]);
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+		assertEquals(80, cache.getSize());
+		
+		// larger than the cache
+		cache.put("d", new byte[101]);
+		assertNull(cache.get("d"));
+		
+		assertEquals(3, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(1, cache.getEvictionCount());
+	}
+	
+	public void testReplace() {
+		ImageCache cache = new ImageCache(100);
+		cache.put("a", new byte[40]);
+		cache.put("a", new byte[90]);
+		assertEquals(90, cache.getSize());
+		assertEquals(1, cache.getCount());
+		assertEquals(0, cache.getEvictionCount());
+	}
+}
@@ -0,0 +1,115 @@
+package net.arnx.wmf2svg.util;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import net.arnx.wmf2svg.gdi.Dib;
+
+import junit.framework.TestCase;
+
+public class PngEncoderTest extends TestCase {
+	private static final int WIDTH = 5;
+	private static final int HEIGHT = 3;
+	
+	private static final int[] PALETTE = {
+		0x000000, 0xFF0000, 0x00FF00, 0x0000FF, 0xFFFFFF, 0x808080, 0x123456, 0xABCDEF
+	};
+	
+	public void testIndexed() throws IOException {
+		check(1, false, false);
+		check(4, false, false);
+		check(8, false, false);
+		check(8, true, false);
+		check(4, false, true);
+	}
+	
+	public void testRgb() throws IOException {
+		check(24, false, false);
+		check(24, true, true);
+		check(32, false, false);
+		check(32, false, true);
+	}
+	
+	public void testUnsupported() {
+		Dib dib = new Dib(createDib(24, false));
+		assertTrue(PngEncoder.isSupported(dib));
+		assertFalse(PngEncoder.isSupported(new Dib(new byte[] {40, 0, 0, 0})));
+		
+		// the stride of 0x08000000 pixels of 32 bits overflows int
+		byte[] header = new byte[40];
+		header[0] = 40;
+		header[7] = 0x08;
+		header[8] = 1;
+		header[12] = 1;
+		header[14] = 32;
+		assertFalse(PngEncoder.isSupported(new Dib(header)));
+		
+		// so does the color table of 0x40000001 colors
+		byte[] colors = createDib(24, false);
+		colors[32] = 1;
+		colors[35] = 0x40;
+		assertFalse(PngEncoder.isSupported(new Dib(colors)));
+	}
+	
+	private void check(int bitCount, boolean topDown, boolean reverse) throws IOException {
+		Dib dib = new Dib(createDib(bitCount, topDown));
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(PngEncoder.encode(dib, reverse)));
+		assertEquals(WIDTH, image.getWidth());
+		assertEquals(HEIGHT, image.getHeight());
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				int expected = PALETTE[index(bitCount, x, reverse ? HEIGHT - 1 - y : y)];
+				assertEquals(bitCount + "bit (" + x + ", " + y + ")",
+					expected, image.getRGB(x, y) & 0xFFFFFF);
+			}
+		}
+	}
+	
+	private static int index(int bitCount, int x, int y) {
+		return (x + y * 2) % ((bitCount == 1) ? 2 : PALETTE.length);
+	}
+	
+	private static byte[] createDib(int bitCount, boolean topDown) {
+		int colors = (bitCount <= 8) ? Math.min(1 << bitCount, PALETTE.length) : 0;
+		int stride = ((WIDTH * bitCount + 31) / 32) * 4;
+		byte[] dib = new byte[40 + colors * 4 + stride * HEIGHT];
+		
+		setInt(dib, 0, 40);
+		setInt(dib, 4, WIDTH);
+		setInt(dib, 8, topDown ? -HEIGHT : HEIGHT);
+		dib[12] = 1;
+		dib[14] = (byte)bitCount;
+		setInt(dib, 32, colors);
+		for (int i = 0; i < colors; i++) {
+			setInt(dib, 40 + i * 4, PALETTE[i]);
+		}
+		
+		for (int y = 0; y < HEIGHT; y++) {
+			int pos = 40 + colors * 4 + stride * (topDown ? y : HEIGHT - 1 - y);
+			for (int x = 0; x < WIDTH; x++) {
+				int index = index(bitCount, x, y);
+				if (bitCount <= 8) {
+					int bit = x * bitCount;
+					dib[pos + bit / 8] |= index << (8 - bitCount - bit % 8);
+				} else {
+					int color = PALETTE[index];
+					int p = pos + x * bitCount / 8;
+					dib[p] = (byte)color;
+					dib[p + 1] = (byte)(color >> 8);
+					dib[p + 2] = (byte)(color >> 16);
+				}
+			}
+		}
+		return dib;
+	}
+	
+	private static void setInt(byte[] data, int pos, int value) {
+		data[pos] = (byte)value;
+		data[pos + 1] = (byte)(value >> 8);
+		data[pos + 2] = (byte)(value >> 16);
+		data[pos + 3] = (byte)(value >> 24);
+	}
+}